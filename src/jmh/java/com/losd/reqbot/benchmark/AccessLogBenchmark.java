@@ -0,0 +1,80 @@
+package com.losd.reqbot.benchmark;
+
+import com.losd.reqbot.accesslog.AccessLog;
+import com.losd.reqbot.config.AccessLogSettings;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogBenchmark {
+    private Path directory;
+    private AccessLog accessLog;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("reqbot-access-log");
+
+        AccessLogSettings settings = new AccessLogSettings();
+        settings.setFile(directory.resolve("access.log").toString());
+        settings.getBucketSampleRatios().put("noisy", 0.0);
+
+        accessLog = new AccessLog(settings);
+        accessLog.afterPropertiesSet();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        accessLog.destroy();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    // what the request thread pays, the writer keeps up or the entries are dropped
+    @Benchmark
+    public void log() {
+        accessLog.log("GET", "/orders/v1/customers/1234/orders", "orders", "ApiController.request", 200, 123456);
+    }
+
+    @Benchmark
+    public void sampledOut() {
+        accessLog.log("GET", "/noisy/v1/customers/1234/orders", "noisy", "ApiController.request", 200, 123456);
+    }
+}
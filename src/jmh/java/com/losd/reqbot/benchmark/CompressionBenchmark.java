@@ -0,0 +1,81 @@
+package com.losd.reqbot.benchmark;
+
+import com.losd.reqbot.model.Response;
+import com.losd.reqbot.repository.StorageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    @Param({"0", "16384"})
+    public int compressAbove;
+
+    @Param({"4096", "262144"})
+    public int bodyBytes;
+
+    private StorageCodec codec;
+    private Response response;
+    private byte[] storedResponse;
+
+    @Setup
+    public void setup() {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; body.length() < bodyBytes; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"order\":").append(98765 + i)
+                    .append(",\"customer\":").append(1234 + i % 97)
+                    .append(",\"sku\":\"ABC-").append(i % 1000)
+                    .append("\",\"quantity\":").append(i % 7 + 1)
+                    .append(",\"status\":\"").append(i % 3 == 0 ? "accepted" : "shipped").append("\"}");
+        }
+
+        codec = new StorageCodec(StorageCodec.Format.JSON, compressAbove);
+        response = new Response.Builder()
+                .addHeader("Content-Type", "application/json")
+                .body(body.append("]").toString())
+                .build();
+
+        storedResponse = codec.encode(response);
+
+        System.out.printf("%nbody %d bytes, stored %d bytes%n", response.getBody().length(), storedResponse.length);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() {
+        return codec.encode(response);
+    }
+
+    @Benchmark
+    public Response decodeResponse() {
+        return codec.decodeResponse(storedResponse);
+    }
+}
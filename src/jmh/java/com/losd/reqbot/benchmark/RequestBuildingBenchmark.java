@@ -0,0 +1,91 @@
+package com.losd.reqbot.benchmark;
+
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuildingBenchmark {
+    private Map<String, String> headers;
+    private Map<String, String> queryParameters;
+
+    @Setup
+    public void setup() {
+        // the same shape spring hands the controller
+        headers = new LinkedHashMap<>();
+        headers.put("Host", "reqbot.example.com");
+        headers.put("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)");
+        headers.put("Accept", "application/json");
+        headers.put("Accept-Encoding", "gzip, deflate");
+        headers.put("X-Request-Id", "5d1c2b8e-8c7e-4f43-9a59-0f4c1b0d6e21");
+        headers.put("Connection", "keep-alive");
+
+        queryParameters = new LinkedHashMap<>();
+        queryParameters.put("page", "1");
+        queryParameters.put("size", "20");
+    }
+
+    @Benchmark
+    public Request buildRequest() {
+        return new Request.Builder()
+                .bucket("orders")
+                .headers(headers)
+                .queryParameters(queryParameters)
+                .method("GET")
+                .path("/orders/v1/customers/1234/orders")
+                .build();
+    }
+
+    // the controller and the store each go through the getters
+    @Benchmark
+    public Map<String, String> buildAndReadRequest() {
+        Request request = buildRequest();
+        request.getHeaders();
+        request.getQueryParameters();
+        request.getTimestamp();
+        return request.getHeaders();
+    }
+
+    @Benchmark
+    public Response buildResponse() {
+        return new Response.Builder()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Cache-Control", "no-cache")
+                .tags(Arrays.asList("orders", "happy-path"))
+                .body("{\"status\":\"accepted\",\"order\":98765}")
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.losd.reqbot.benchmark;
+
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import com.losd.reqbot.repository.StorageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageCodecBenchmark {
+    @Param({"JSON", "BINARY"})
+    public StorageCodec.Format format;
+
+    private StorageCodec codec;
+    private Request request;
+    private Response response;
+    private byte[] storedRequest;
+    private byte[] storedResponse;
+
+    @Setup
+    public void setup() {
+        codec = new StorageCodec(format);
+
+        request = new Request.Builder()
+                .bucket("orders")
+                .method("POST")
+                .path("/orders/v1/customers/1234/orders")
+                .addHeader("Host", "reqbot.example.com")
+                .addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)")
+                .addHeader("Accept", "application/json")
+                .addHeader("Accept-Encoding", "gzip, deflate")
+                .addHeader("Content-Type", "application/json; charset=UTF-8")
+                .addHeader("Content-Length", "96")
+                .addHeader("X-Request-Id", "5d1c2b8e-8c7e-4f43-9a59-0f4c1b0d6e21")
+                .addHeader("Connection", "keep-alive")
+                .addQueryParameters("page", "1")
+                .addQueryParameters("size", "20")
+                .body("{\"customer\":1234,\"items\":[{\"sku\":\"ABC-123\",\"quantity\":2}],\"note\":\"leave at the door\"}")
+                .build();
+
+        response = new Response.Builder()
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Cache-Control", "no-cache")
+                .tags(Arrays.asList("orders", "happy-path"))
+                .body("{\"status\":\"accepted\",\"order\":98765}")
+                .build();
+
+        storedRequest = codec.encode(request);
+        storedResponse = codec.encode(response);
+
+        System.out.printf("%n%s: request %d bytes, response %d bytes%n", format, storedRequest.length, storedResponse.length);
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() {
+        return codec.encode(request);
+    }
+
+    @Benchmark
+    public Request decodeRequest() {
+        return codec.decodeRequest(storedRequest);
+    }
+
+    // what a bucket listing does for every entry
+    @Benchmark
+    public String requestJson() {
+        return codec.requestJson(storedRequest);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() {
+        return codec.encode(response);
+    }
+
+    @Benchmark
+    public Response decodeResponse() {
+        return codec.decodeResponse(storedResponse);
+    }
+}
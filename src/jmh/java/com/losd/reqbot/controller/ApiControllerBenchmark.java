@@ -0,0 +1,127 @@
+package com.losd.reqbot.controller;
+
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.Response;
+import com.losd.reqbot.repository.RequestMemoryRepo;
+import com.losd.reqbot.repository.ResponseMemoryRepo;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiControllerBenchmark {
+    private ApiController controller;
+    private MockHttpServletRequest servletRequest;
+    private Map<String, String> headers;
+    private Map<String, String> queryParameters;
+    private String responseKey;
+
+    @Setup
+    public void setup() {
+        RequestSettings settings = new RequestSettings();
+        RequestMemoryRepo requestRepo = new RequestMemoryRepo();
+        ReflectionTestUtils.setField(requestRepo, "settings", settings);
+        ResponseMemoryRepo responseRepo = new ResponseMemoryRepo();
+
+        Capturer capturer = new Capturer();
+        ReflectionTestUtils.setField(capturer, "requestRepo", requestRepo);
+        ReflectionTestUtils.setField(capturer, "responseRepo", responseRepo);
+        ReflectionTestUtils.setField(capturer, "requestSettings", settings);
+        ReflectionTestUtils.setField(capturer, "metrics", new ReqbotMetrics());
+
+        controller = new ApiController();
+        ReflectionTestUtils.setField(controller, "requestRepo", requestRepo);
+        ReflectionTestUtils.setField(controller, "responseRepo", responseRepo);
+        ReflectionTestUtils.setField(controller, "capturer", capturer);
+
+        Response response = new Response.Builder()
+                .addHeader("Content-Type", "application/json")
+                .body("{\"status\":\"accepted\",\"order\":98765}")
+                .build();
+        responseRepo.save(response);
+        responseKey = response.getUuid().toString();
+
+        servletRequest = new MockHttpServletRequest("GET", "/orders/v1/customers/1234/orders");
+        servletRequest.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, "v1/customers/1234/orders");
+
+        headers = new LinkedHashMap<>();
+        headers.put("Host", "reqbot.example.com");
+        headers.put("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)");
+        headers.put("Accept", "application/json");
+        headers.put("Accept-Encoding", "gzip, deflate");
+        headers.put("X-Request-Id", "5d1c2b8e-8c7e-4f43-9a59-0f4c1b0d6e21");
+        headers.put("x-reqbot-http-code", "201");
+
+        queryParameters = new LinkedHashMap<>();
+        queryParameters.put("page", "1");
+        queryParameters.put("size", "20");
+        queryParameters.put("sort", "created");
+    }
+
+    @Benchmark
+    public String headerLookup() {
+        return Capturer.header(headers, ReqbotHttpHeaders.HTTP_CODE);
+    }
+
+    // how the headers used to be looked up, kept to compare against
+    @Benchmark
+    public String caseInsensitiveCopy() {
+        TreeMap<String, String> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.putAll(headers);
+        return caseInsensitive.get(ReqbotHttpHeaders.HTTP_CODE);
+    }
+
+    @Benchmark
+    public String buildQueryString() {
+        return Capturer.buildQueryString(queryParameters);
+    }
+
+    // spring hands every request its own maps, so each capture does too
+    @Benchmark
+    public ResponseEntity<byte[]> capture() {
+        return controller.request("orders", new LinkedHashMap<>(queryParameters), new LinkedHashMap<>(headers), servletRequest);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> captureWithResponse() {
+        return controller.requestWithResponse("orders", responseKey, new LinkedHashMap<>(queryParameters),
+                new LinkedHashMap<>(headers), servletRequest);
+    }
+}
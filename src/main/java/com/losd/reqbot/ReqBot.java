@@ -1,6 +1,8 @@
 package com.losd.reqbot;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.EndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.TraceWebFilterAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
 
@@ -28,7 +30,7 @@ import org.springframework.context.annotation.ComponentScan;
  * THE SOFTWARE.
  */
 @ComponentScan
-@SpringBootApplication
+@SpringBootApplication(exclude = {EndpointAutoConfiguration.class, TraceWebFilterAutoConfiguration.class})
 public class ReqBot {
     public static void main(String[] args) {
         SpringApplication app = new SpringApplication(ReqBot.class);
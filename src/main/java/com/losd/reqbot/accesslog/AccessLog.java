@@ -0,0 +1,261 @@
+package com.losd.reqbot.accesslog;
+
+import com.losd.reqbot.config.AccessLogSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class AccessLog implements PublicMetrics, InitializingBean, DisposableBean {
+    public static final String PREFIX = "reqbot.accessLog.";
+    public static final String LOGGER = "reqbot.access";
+
+    private static final int BATCH_SIZE = 1024;
+
+    Logger logger = LoggerFactory.getLogger(AccessLog.class);
+    Logger accessLogger = LoggerFactory.getLogger(LOGGER);
+
+    private final boolean enabled;
+    private final double sampleRatio;
+    private final Map<String, Double> bucketSampleRatios;
+    private final AccessLogRing ring;
+    private final RollingFile file;
+    private final long flushNanos;
+    private final Thread writer;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private volatile long written = 0;
+    private volatile long failed = 0;
+
+    // only touched by the writer
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+    private final Writer batchWriter = new OutputStreamWriter(batch, StandardCharsets.UTF_8);
+    private final StringBuilder line = new StringBuilder(256);
+
+    private volatile boolean running = false;
+
+    public AccessLog(AccessLogSettings settings) {
+        this.enabled = settings.isEnabled();
+        this.sampleRatio = settings.getSampleRatio();
+        this.bucketSampleRatios = new HashMap<>(settings.getBucketSampleRatios());
+        this.ring = new AccessLogRing(settings.getBufferSize());
+        // without a file the entries go to the reqbot.access logger, from the writer, so a call still never waits on them
+        this.file = settings.getFile() == null || settings.getFile().isEmpty() ? null
+                : new RollingFile(Paths.get(settings.getFile()), settings.getMaxFileBytes(), settings.getMaxFiles());
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.getFlushMillis()));
+        this.writer = new Thread(this::writeLoop, "reqbot-access-log");
+        this.writer.setDaemon(true);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            running = true;
+            writer.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    // called on the request thread, so it never blocks and never formats anything. when the writer has fallen a
+    // whole ring behind the entry is dropped and counted
+    public void log(String method, String path, String bucket, String handler, int status, long nanos) {
+        if (!running || !sampled(bucket)) {
+            return;
+        }
+
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            dropped.increment();
+            return;
+        }
+
+        AccessLogEntry entry = ring.entry(sequence);
+        entry.timeMillis = System.currentTimeMillis();
+        entry.method = method;
+        entry.path = path;
+        entry.bucket = bucket;
+        entry.handler = handler;
+        entry.status = status;
+        entry.micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        ring.publish(sequence);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(PREFIX + "written", written));
+        metrics.add(new Metric<>(PREFIX + "dropped", dropped.sum()));
+        metrics.add(new Metric<>(PREFIX + "sampledOut", sampledOut.sum()));
+        metrics.add(new Metric<>(PREFIX + "failed", failed));
+        metrics.add(new Metric<>(PREFIX + "pending", ring.size()));
+        metrics.add(new Metric<>(PREFIX + "capacity", ring.capacity()));
+        return metrics;
+    }
+
+    long getWritten() {
+        return written;
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    private boolean sampled(String bucket) {
+        Double ratio = bucket == null ? null : bucketSampleRatios.get(bucket);
+        double keep = ratio == null ? sampleRatio : ratio;
+
+        if (keep >= 1.0 || (keep > 0.0 && ThreadLocalRandom.current().nextDouble() < keep)) {
+            return true;
+        }
+
+        sampledOut.increment();
+        return false;
+    }
+
+    // the writer only sleeps once it has caught up, while entries keep coming it writes them a batch at a time
+    private void writeLoop() {
+        while (true) {
+            boolean stopping = !running;
+            int drained = ring.drain(this::append, BATCH_SIZE);
+            flush(drained);
+
+            if (drained == 0) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(this, flushNanos);
+            }
+        }
+    }
+
+    private void append(AccessLogEntry entry) {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.timeMillis)).append('"');
+        string("method", entry.method);
+        string("path", entry.path);
+        string("bucket", entry.bucket);
+        string("handler", entry.handler);
+        line.append(",\"status\":").append(entry.status);
+        line.append(",\"micros\":").append(entry.micros);
+        line.append('}');
+
+        if (file == null) {
+            accessLogger.info(line.toString());
+            return;
+        }
+
+        line.append('\n');
+        try {
+            batchWriter.append(line);
+        }
+        catch (IOException e) {
+            // a ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void string(String name, String value) {
+        if (value == null) {
+            return;
+        }
+
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void flush(int entries) {
+        if (entries == 0) {
+            return;
+        }
+
+        if (file == null) {
+            written += entries;
+            return;
+        }
+
+        try {
+            batchWriter.flush();
+            file.write(batch);
+            written += entries;
+        }
+        catch (IOException e) {
+            failed += entries;
+            logger.error("Unable to write {} access log entries", entries, e);
+        }
+        finally {
+            batch.reset();
+        }
+    }
+}
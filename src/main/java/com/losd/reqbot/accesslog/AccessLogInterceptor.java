@@ -0,0 +1,92 @@
+package com.losd.reqbot.accesslog;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class AccessLogInterceptor extends HandlerInterceptorAdapter {
+    static final String START = AccessLogInterceptor.class.getName() + ".start";
+    static final String BUCKET = "bucket";
+
+    private final AccessLog accessLog;
+    private final ConcurrentMap<HandlerMethod, String> names = new ConcurrentHashMap<>();
+
+    public AccessLogInterceptor(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    // a deferred result comes back through here a second time, it is logged from when it first arrived
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(START) == null) {
+            request.setAttribute(START, System.nanoTime());
+        }
+        return true;
+    }
+
+    // only called once a deferred result has been sent, by which time the status is known
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START);
+        request.removeAttribute(START);
+
+        if (start == null) {
+            return;
+        }
+
+        accessLog.log(request.getMethod(), request.getRequestURI(), bucket(request), name(handler),
+                response.getStatus(), System.nanoTime() - (Long) start);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String bucket(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables == null ? null : variables.get(BUCKET);
+    }
+
+    // the same names the endpoint timings use
+    private String name(Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return null;
+        }
+
+        HandlerMethod method = (HandlerMethod) handler;
+        String name = names.get(method);
+        if (name != null) {
+            return name;
+        }
+
+        return names.computeIfAbsent(method, key -> ClassUtils.getUserClass(key.getBeanType()).getSimpleName()
+                + "." + key.getMethod().getName());
+    }
+}
@@ -0,0 +1,110 @@
+package com.losd.reqbot.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// any number of threads add entries, only the writer takes them out. each slot carries the sequence it is waiting
+// for, so a thread that claims a slot never waits on another one and a full ring is seen without taking a lock
+final class AccessLogRing {
+    private final int capacity;
+    private final int mask;
+    private final AccessLogEntry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    // only the writer moves the head along
+    private volatile long head = 0;
+
+    AccessLogRing(int size) {
+        capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        mask = capacity - 1;
+        entries = new AccessLogEntry[capacity];
+        sequences = new AtomicLongArray(capacity);
+
+        for (int index = 0; index < capacity; index++) {
+            entries[index] = new AccessLogEntry();
+            sequences.set(index, index);
+        }
+    }
+
+    // the sequence of a free slot, or -1 when the writer hasn't caught up with the last lap
+    long claim() {
+        long sequence = tail.get();
+        while (true) {
+            long expected = sequences.get((int) sequence & mask);
+            if (expected == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            }
+            else if (expected < sequence) {
+                return -1;
+            }
+            sequence = tail.get();
+        }
+    }
+
+    AccessLogEntry entry(long sequence) {
+        return entries[(int) sequence & mask];
+    }
+
+    // the entry is only seen by the writer once it has been published
+    void publish(long sequence) {
+        sequences.lazySet((int) sequence & mask, sequence + 1);
+    }
+
+    // stops at the first slot that has been claimed but not published yet, even if later ones are ready
+    int drain(Consumer<AccessLogEntry> consumer, int max) {
+        long next = head;
+        int drained = 0;
+
+        while (drained < max) {
+            int index = (int) next & mask;
+            if (sequences.get(index) != next + 1) {
+                break;
+            }
+
+            AccessLogEntry entry = entries[index];
+            consumer.accept(entry);
+            entry.clear();
+            sequences.lazySet(index, next + capacity);
+            next++;
+            drained++;
+        }
+
+        head = next;
+        return drained;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
@@ -0,0 +1,103 @@
+package com.losd.reqbot.accesslog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// access.log is always the newest, once it is full it becomes access.log.1, the old access.log.1 becomes
+// access.log.2 and so on, and whatever would be past maxFiles is deleted
+final class RollingFile {
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    private OutputStream out = null;
+    private long written;
+
+    RollingFile(Path file, long maxBytes, int maxFiles) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    // a batch is never split across files, so a file can go over maxBytes by up to one batch
+    void write(ByteArrayOutputStream batch) throws IOException {
+        int length = batch.size();
+        if (out == null) {
+            open();
+        }
+        else if (written > 0 && written + length > maxBytes) {
+            roll();
+        }
+
+        batch.writeTo(out);
+        written += length;
+    }
+
+    void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    Path rolled(int number) {
+        return file.resolveSibling(file.getFileName() + "." + number);
+    }
+
+    private void open() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        written = Files.exists(file) ? Files.size(file) : 0;
+        out = new FileOutputStream(file.toFile(), true);
+    }
+
+    private void roll() throws IOException {
+        close();
+
+        if (maxFiles == 1) {
+            Files.delete(file);
+        }
+        else {
+            Files.deleteIfExists(rolled(maxFiles - 1));
+            for (int number = maxFiles - 2; number >= 1; number--) {
+                if (Files.exists(rolled(number))) {
+                    Files.move(rolled(number), rolled(number + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        open();
+    }
+}
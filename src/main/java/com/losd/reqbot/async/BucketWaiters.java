@@ -0,0 +1,142 @@
+package com.losd.reqbot.async;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class BucketWaiters implements DisposableBean {
+    private final ConcurrentMap<String, Set<Waiter<?>>> waiting = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public BucketWaiters(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "reqbot-wait-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        int size = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+    }
+
+    // check hands back null while there is nothing new. it is asked straight away and then again each time the bucket
+    // has something captured into it, until it finds something or the wait times out
+    public <T> DeferredResult<T> await(String bucket, long timeoutMillis, T timedOut, Supplier<T> check) {
+        DeferredResult<T> result = new DeferredResult<>(timeoutMillis, timedOut);
+        Waiter<T> waiter = new Waiter<>(bucket, result, check);
+
+        // it is waiting before the first look, so a capture that lands in between still wakes it
+        waiting.computeIfAbsent(bucket, key -> ConcurrentHashMap.newKeySet()).add(waiter);
+        result.onCompletion(waiter::remove);
+
+        waiter.check();
+        return result;
+    }
+
+    public void captured(String bucket) {
+        Set<Waiter<?>> waiters = waiting.get(bucket);
+        if (waiters == null) {
+            return;
+        }
+
+        for (Waiter<?> waiter : waiters) {
+            waiter.wake();
+        }
+    }
+
+    int waiting(String bucket) {
+        Set<Waiter<?>> waiters = waiting.get(bucket);
+        return waiters == null ? 0 : waiters.size();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private final class Waiter<T> {
+        private final String bucket;
+        private final DeferredResult<T> result;
+        private final Supplier<T> check;
+
+        // a burst of captures only queues one look at the bucket
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        Waiter(String bucket, DeferredResult<T> result, Supplier<T> check) {
+            this.bucket = bucket;
+            this.result = result;
+            this.check = check;
+        }
+
+        void wake() {
+            if (queued.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    queued.set(false);
+                    check();
+                });
+            }
+        }
+
+        void check() {
+            if (result.isSetOrExpired()) {
+                remove();
+                return;
+            }
+
+            try {
+                T found = check.get();
+                if (found != null) {
+                    result.setResult(found);
+                    remove();
+                }
+            }
+            catch (RuntimeException e) {
+                result.setErrorResult(e);
+                remove();
+            }
+        }
+
+        // the set for a bucket is left behind once it is empty, there are only ever as many as there are buckets
+        void remove() {
+            Set<Waiter<?>> waiters = waiting.get(bucket);
+            if (waiters != null) {
+                waiters.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.losd.reqbot.async;
+
+import com.losd.reqbot.jfr.Flight;
+import com.losd.reqbot.jfr.GoSlowEvent;
+import com.losd.reqbot.metrics.LatencyTimer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class DelayScheduler implements DisposableBean {
+    // how much longer than the delay the container waits before giving up on a deferred result
+    static final long TIMEOUT_MARGIN_MILLIS = 10000;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final LatencyTimer waited;
+
+    public DelayScheduler(int threads) {
+        this(threads, new LatencyTimer());
+    }
+
+    public DelayScheduler(int threads, LatencyTimer waited) {
+        this.waited = waited;
+
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "reqbot-delay-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), factory);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    public <T> DeferredResult<T> complete(T result, long delayMillis) {
+        return complete(() -> result, delayMillis);
+    }
+
+    // the result is only asked for once the delay is up
+    public <T> DeferredResult<T> complete(Supplier<T> result, long delayMillis) {
+        return after(delayMillis, deferred -> deferred.setResult(result.get()));
+    }
+
+    // the error is handled the same way as if it had been thrown, just later
+    public <T> DeferredResult<T> fail(Exception error, long delayMillis) {
+        return after(delayMillis, deferred -> deferred.setErrorResult(error));
+    }
+
+    private <T> DeferredResult<T> after(long delayMillis, Consumer<DeferredResult<T>> finish) {
+        DeferredResult<T> deferred = new DeferredResult<>(delayMillis + TIMEOUT_MARGIN_MILLIS);
+
+        if (delayMillis <= 0) {
+            finish.accept(deferred);
+        } else {
+            long start = System.nanoTime();
+            GoSlowEvent event = Flight.goSlow();
+            executor.schedule(() -> {
+                waited.recordSince(start);
+                if (event != null) {
+                    event.finish(delayMillis);
+                }
+                finish.accept(deferred);
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return deferred;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
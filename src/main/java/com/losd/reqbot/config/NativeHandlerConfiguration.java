@@ -0,0 +1,53 @@
+package com.losd.reqbot.config;
+
+import com.losd.reqbot.controller.NativeCaptureHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.undertow.UndertowEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// captures and serves /{bucket}/** straight off the undertow exchange, everything else still goes through spring mvc
+@Configuration
+@ConditionalOnClass(UndertowEmbeddedServletContainerFactory.class)
+@ConditionalOnProperty(prefix = "reqbot.request", name = "nativeHandler", havingValue = "true")
+public class NativeHandlerConfiguration {
+    @Bean
+    public NativeCaptureHandler nativeCaptureHandler() {
+        return new NativeCaptureHandler();
+    }
+
+    @Bean
+    public EmbeddedServletContainerCustomizer nativeCaptureCustomizer(NativeCaptureHandler handler) {
+        return container -> {
+            if (container instanceof UndertowEmbeddedServletContainerFactory) {
+                ((UndertowEmbeddedServletContainerFactory) container).addDeploymentInfoCustomizers(
+                        deploymentInfo -> deploymentInfo.addInitialHandlerChainWrapper(handler));
+            }
+        };
+    }
+}
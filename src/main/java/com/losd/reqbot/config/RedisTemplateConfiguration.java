@@ -1,10 +1,12 @@
 package com.losd.reqbot.config;
 
+import com.losd.reqbot.metrics.RedisPoolMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.JedisPoolConfig;
 
 /**
  * The MIT License (MIT)
@@ -42,6 +44,13 @@ public class RedisTemplateConfiguration {
         factory.setPort(settings.getPort());
         factory.setUsePool(true);
 
+        // commons pool puts the pool in jmx under this name, which is where its utilisation is read from. the name base
+        // has to be set as well, commons pool 2.3 defaults it to something that leaves the prefix out
+        JedisPoolConfig pool = new JedisPoolConfig();
+        pool.setJmxNameBase(RedisPoolMetrics.JMX_NAME_BASE);
+        pool.setJmxNamePrefix(RedisPoolMetrics.JMX_NAME_PREFIX);
+        factory.setPoolConfig(pool);
+
         return factory;
     }
 
@@ -49,4 +58,9 @@ public class RedisTemplateConfiguration {
     StringRedisTemplate template() {
         return new StringRedisTemplate(connectionFactory());
     }
+
+    @Bean
+    RedisPoolMetrics redisPoolMetrics() {
+        return new RedisPoolMetrics();
+    }
 }
@@ -1,11 +1,21 @@
 package com.losd.reqbot.config;
 
-import com.losd.reqbot.repository.RequestRedisRepo;
-import com.losd.reqbot.repository.RequestRepo;
-import com.losd.reqbot.repository.ResponseRedisRepo;
-import com.losd.reqbot.repository.ResponseRepo;
+import com.losd.reqbot.async.BucketWaiters;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.repository.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
 
 /**
  * The MIT License (MIT)
@@ -32,13 +42,137 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class RepoConfiguration {
+    static final String STORAGE_PREFIX = "reqbot";
+    static final String STORAGE = "storage";
+    static final String CODEC = "codec";
+
+    @Autowired
+    RequestSettings settings;
+
+    @Autowired
+    ResponseSettings responseSettings;
+
+    @Autowired
+    CompressionSettings compressionSettings;
+
+    @Autowired
+    ReqbotMetrics metrics;
+
+    // the write behind queue is there to save redis round trips, the other stores have none
+    @Bean
+    @Primary
+    public RequestRepo requestRepo(@Qualifier("requestStore") RequestRepo requestStore, BucketWaiters bucketWaiters) {
+        if (!(requestStore instanceof RequestRedisRepo)) {
+            return new NotifyingRequestRepo(requestStore, bucketWaiters);
+        }
+
+        // the write behind batches are timed, not the captures that are queued for them
+        RequestRepo timed = new TimedRequestRepo(requestStore, metrics, ReqbotMetrics.REDIS_PREFIX + "request.");
+        if (settings.isWriteBehind()) {
+            return new WriteBehindRequestRepo(timed, settings);
+        }
+
+        return timed;
+    }
+
+    @Bean
+    public BucketWaiters bucketWaiters() {
+        return new BucketWaiters(settings.getWaitThreads());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = STORAGE_PREFIX, name = CODEC, havingValue = "json", matchIfMissing = true)
+    public StorageCodec jsonStorageCodec() {
+        return new StorageCodec(StorageCodec.Format.JSON, compressionSettings.getThreshold());
+    }
+
+    // smaller and cheaper to write, but the listing endpoints have to turn each entry back into json
     @Bean
-    public RequestRepo requestRepo() {
-        return new RequestRedisRepo();
+    @ConditionalOnProperty(prefix = STORAGE_PREFIX, name = CODEC, havingValue = "binary")
+    public StorageCodec binaryStorageCodec() {
+        return new StorageCodec(StorageCodec.Format.BINARY, compressionSettings.getThreshold());
     }
 
     @Bean
-    public ResponseRepo responseRepo() {
-        return new ResponseRedisRepo();
+    public ResponseCache responseCache() {
+        return new ResponseCache(responseSettings.getCacheEntries(), responseSettings.getCacheBytes());
+    }
+
+    // every store hands back a new response each time, a cached one is only compiled for serving once
+    @Bean
+    @Primary
+    public ResponseRepo responseRepo(@Qualifier("responseStore") ResponseRepo responseStore, ResponseCache responseCache) {
+        ResponseRepo repo = responseStore;
+        if (responseStore instanceof ResponseRedisRepo) {
+            repo = new TimedResponseRepo(responseStore, metrics, ReqbotMetrics.REDIS_PREFIX + "response.");
+        }
+
+        if (responseSettings.getCacheEntries() > 0) {
+            return new CachingResponseRepo(repo, responseCache);
+        }
+
+        return repo;
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = STORAGE_PREFIX, name = STORAGE, havingValue = "redis", matchIfMissing = true)
+    static class RedisStorage {
+        @Bean(name = {"requestStore", "requestRedisRepo"})
+        public RequestRedisRepo requestRedisRepo() {
+            return new RequestRedisRepo();
+        }
+
+        @Bean(name = {"responseStore", "responseRedisRepo"})
+        public ResponseRedisRepo responseRedisRepo() {
+            return new ResponseRedisRepo();
+        }
+
+        // every node hears about every capture, whichever node it was saved on. the listener only hands the bucket
+        // over to the waiters' own threads, so it is called straight from the subscription thread. the subscription
+        // needs a thread of its own or it would take over whichever one starts the container
+        @Bean
+        public RedisMessageListenerContainer capturedListener(RedisConnectionFactory connectionFactory, BucketWaiters bucketWaiters) {
+            SimpleAsyncTaskExecutor subscription = new SimpleAsyncTaskExecutor("reqbot-captured-");
+            subscription.setDaemon(true);
+
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.setSubscriptionExecutor(subscription);
+            container.setTaskExecutor(new SyncTaskExecutor());
+            container.addMessageListener((message, pattern) -> bucketWaiters.captured(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(RequestRedisRepo.CAPTURED_CHANNEL));
+
+            return container;
+        }
+    }
+
+    // everything is kept on the heap and lost on restart, but there is no redis to run
+    @Configuration
+    @ConditionalOnProperty(prefix = STORAGE_PREFIX, name = STORAGE, havingValue = "memory")
+    static class MemoryStorage {
+        @Bean(name = {"requestStore", "requestMemoryRepo"})
+        public RequestMemoryRepo requestMemoryRepo() {
+            return new RequestMemoryRepo();
+        }
+
+        @Bean(name = {"responseStore", "responseMemoryRepo"})
+        public ResponseMemoryRepo responseMemoryRepo() {
+            return new ResponseMemoryRepo();
+        }
+    }
+
+    // kept in memory mapped segment files under reqbot.journal.directory, so it survives a restart without redis
+    @Configuration
+    @ConditionalOnProperty(prefix = STORAGE_PREFIX, name = STORAGE, havingValue = "journal")
+    static class JournalStorage {
+        @Bean(name = {"requestStore", "requestJournalRepo"})
+        public RequestJournalRepo requestJournalRepo() {
+            return new RequestJournalRepo();
+        }
+
+        @Bean(name = {"responseStore", "responseJournalRepo"})
+        public ResponseJournalRepo responseJournalRepo() {
+            return new ResponseJournalRepo();
+        }
     }
 }
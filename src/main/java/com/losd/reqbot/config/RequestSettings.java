@@ -32,6 +32,15 @@ import org.springframework.context.annotation.Configuration;
 @ConfigurationProperties(prefix = "reqbot.request")
 public class RequestSettings {
     private int queueSize = 3;
+    private boolean writeBehind = false;
+    private int writeBehindCapacity = 10000;
+    private int batchSize = 100;
+    private long lingerMillis = 5;
+    private int goSlowThreads = 2;
+    private int maxCapturedBytes = 1024 * 1024;
+    private boolean nativeHandler = false;
+    private boolean serverTiming = false;
+    private int waitThreads = 2;
 
     public int getQueueSize() {
         return queueSize;
@@ -40,4 +49,76 @@ public class RequestSettings {
     public void setQueueSize(int queueSize) {
         this.queueSize = queueSize;
     }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public int getWriteBehindCapacity() {
+        return writeBehindCapacity;
+    }
+
+    public void setWriteBehindCapacity(int writeBehindCapacity) {
+        this.writeBehindCapacity = writeBehindCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    public int getGoSlowThreads() {
+        return goSlowThreads;
+    }
+
+    public void setGoSlowThreads(int goSlowThreads) {
+        this.goSlowThreads = goSlowThreads;
+    }
+
+    public int getMaxCapturedBytes() {
+        return maxCapturedBytes;
+    }
+
+    public void setMaxCapturedBytes(int maxCapturedBytes) {
+        this.maxCapturedBytes = maxCapturedBytes;
+    }
+
+    public boolean isNativeHandler() {
+        return nativeHandler;
+    }
+
+    public void setNativeHandler(boolean nativeHandler) {
+        this.nativeHandler = nativeHandler;
+    }
+
+    public boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    public void setServerTiming(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+    }
+
+    public int getWaitThreads() {
+        return waitThreads;
+    }
+
+    public void setWaitThreads(int waitThreads) {
+        this.waitThreads = waitThreads;
+    }
 }
@@ -27,4 +27,8 @@ public class ReqbotHttpHeaders {
     public static final String HTTP_CODE = "X-REQBOT-HTTP-CODE";
     public static final String RESPONSE = "X-REQBOT-RESPONSE";
     public static final String GO_SLOW = "X-REQBOT-GO-SLOW";
+    public static final String NEXT_CURSOR = "X-REQBOT-NEXT-CURSOR";
+    public static final String PATH = "X-REQBOT-PATH";
+    public static final String QUERYSTRING = "X-REQBOT-QUERYSTRING";
+    public static final String SERVER_TIMING = "Server-Timing";
 }
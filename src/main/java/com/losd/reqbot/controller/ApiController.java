@@ -2,6 +2,8 @@ package com.losd.reqbot.controller;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.losd.reqbot.async.BucketWaiters;
+import com.losd.reqbot.async.DelayScheduler;
 import com.losd.reqbot.config.GitConfiguration;
 import com.losd.reqbot.constant.ReqbotHttpHeaders;
 import com.losd.reqbot.model.IncomingResponse;
@@ -9,20 +11,20 @@ import com.losd.reqbot.model.Request;
 import com.losd.reqbot.model.Response;
 import com.losd.reqbot.repository.RequestRepo;
 import com.losd.reqbot.repository.ResponseRepo;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.servlet.HandlerMapping;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * The MIT License (MIT)
@@ -47,9 +49,10 @@ import java.util.TreeMap;
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
+// each call is written to the access log by AccessLogInterceptor, off the request thread
 @RestController
 public class ApiController {
-    Logger logger = LoggerFactory.getLogger(ApiController.class);
+    static final long MAX_WAIT_MILLIS = 300000;
 
     @Autowired
     private RequestRepo requestRepo = null;
@@ -60,30 +63,54 @@ public class ApiController {
     @Autowired
     private GitConfiguration gitConfiguration = null;
 
+    @Autowired
+    private DelayScheduler delayScheduler = null;
+
+    @Autowired
+    private Capturer capturer = null;
+
+    @Autowired
+    private BucketWaiters bucketWaiters = null;
+
     @ResponseBody
     @RequestMapping(value = "/version", method = RequestMethod.GET, produces = {MediaType.TEXT_PLAIN_VALUE})
     String getVersion() {
-        logger.info("GET /version");
-
         return gitConfiguration.getShortCommitId();
     }
 
-    @ResponseBody
     @RequestMapping(value = "/buckets/{bucket}", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
-    List<Request> getRequestsByBucket(@PathVariable String bucket) {
-        logger.info("GET /buckets/{}", bucket);
-        List<Request> result = requestRepo.getByBucket(bucket);
-
-        if (result.isEmpty()) throw new ResourceNotFoundException();
+    void getRequestsByBucket(@PathVariable String bucket,
+                             @RequestParam(value = "cursor", defaultValue = "0") long cursor,
+                             @RequestParam(value = "limit", required = false) Integer limit,
+                             HttpServletResponse response) throws IOException {
+        JsonArrayStream result = new JsonArrayStream(response);
+
+        requestRepo.streamRawByBucket(bucket, cursor, checkPage(cursor, limit), result);
+        result.finish();
+    }
 
-        return result;
+    // no worker thread is held while it waits. without after, anything already in the bucket is new, and an empty
+    // list means nothing turned up before the timeout
+    @ResponseBody
+    @RequestMapping(value = "/buckets/{bucket}/wait", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    DeferredResult<String> waitForRequests(@PathVariable String bucket,
+                                           @RequestParam(value = "after", required = false) String after,
+                                           @RequestParam(value = "timeout", defaultValue = "30000") long timeout) {
+        if (timeout < 1 || timeout > MAX_WAIT_MILLIS) throw new InvalidWaitException();
+
+        return bucketWaiters.await(bucket, timeout, jsonArray(Collections.emptyList()), () -> {
+            List<String> captured = requestRepo.getRawByBucketAfter(bucket, after);
+            return captured.isEmpty() ? null : jsonArray(captured);
+        });
     }
 
     @ResponseBody
     @RequestMapping(value = "/buckets", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
-    List<String> getBuckets() {
-        logger.info("GET /buckets");
-        List<String> result = requestRepo.getBuckets();
+    List<String> getBuckets(@RequestParam(value = "cursor", defaultValue = "0") long cursor,
+                            @RequestParam(value = "limit", required = false) Integer limit,
+                            HttpServletResponse response) {
+        int pageSize = checkPage(cursor, limit);
+        List<String> result = page(requestRepo.getBuckets(cursor, pageSize + 1L), cursor, pageSize, response);
 
         if (result.isEmpty()) throw new ResourceNotFoundException();
 
@@ -92,30 +119,31 @@ public class ApiController {
 
     @ResponseBody
     @RequestMapping(value = "/tags", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
-    List<String> getTags() {
-        logger.info("GET /tags");
-        List<String> tags = responseRepo.getTags();
+    List<String> getTags(@RequestParam(value = "cursor", defaultValue = "0") long cursor,
+                         @RequestParam(value = "limit", required = false) Integer limit,
+                         HttpServletResponse response) {
+        int pageSize = checkPage(cursor, limit);
+        List<String> tags = page(responseRepo.getTags(cursor, pageSize + 1L), cursor, pageSize, response);
 
         if (tags.isEmpty()) throw new ResourceNotFoundException();
 
         return tags;
     }
 
-    @ResponseBody
     @RequestMapping(value = "/tags/{tag}", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
-    List<Response> getResponsesByTag(@PathVariable String tag) {
-        logger.info("GET /tags/{}", tag);
-        List<Response> result = responseRepo.getByTag(tag);
-
-        if (result.isEmpty()) throw new ResourceNotFoundException();
-
-        return result;
+    void getResponsesByTag(@PathVariable String tag,
+                           @RequestParam(value = "cursor", defaultValue = "0") long cursor,
+                           @RequestParam(value = "limit", required = false) Integer limit,
+                           HttpServletResponse response) throws IOException {
+        JsonArrayStream result = new JsonArrayStream(response);
+
+        responseRepo.streamRawByTag(tag, cursor, checkPage(cursor, limit), result);
+        result.finish();
     }
 
     @ResponseBody
     @RequestMapping(value = "/responses/{responseKey}", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
     Response getResponse(@PathVariable String responseKey) {
-        logger.info("GET /responses/{}", responseKey);
         Optional<Response> result = Optional.fromNullable(responseRepo.get(responseKey));
 
         if (!result.isPresent()) throw new ResourceNotFoundException();
@@ -126,7 +154,6 @@ public class ApiController {
     @ResponseBody
     @RequestMapping(value = "/responses", method = RequestMethod.POST, produces = {MediaType.APPLICATION_JSON_VALUE})
     public Response saveResponse(@RequestBody IncomingResponse incoming) {
-        logger.info("POST /responses");
         if (Strings.isNullOrEmpty(incoming.getBody())) throw new IncomingEmptyBodyException();
 
         Map<String, String> headers = incoming.getHeaders();
@@ -140,150 +167,155 @@ public class ApiController {
 
     @ResponseBody
     @RequestMapping(value = "/{bucket}/response/{responseKey}", method = RequestMethod.GET)
-    ResponseEntity<String> requestWithResponse(@PathVariable String bucket,
+    ResponseEntity<byte[]> requestWithResponse(@PathVariable String bucket,
                                                  @PathVariable String responseKey,
                                                  @RequestParam Map<String, String> queryParams,
                                                  @RequestHeader Map<String, String> headers,
                                                  HttpServletRequest request) {
-        logger.info("GET /{}/response/{}", bucket, responseKey);
         String path = (String) request.getAttribute(
                 HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
         headers.put(ReqbotHttpHeaders.RESPONSE, responseKey);
-        return handleRequest(request.getMethod(), bucket, queryParams, headers, null, path);
+        return handleRequest(request.getMethod(), bucket, queryParams, headers, new Request.Builder(), path);
     }
 
     @ResponseBody
     @RequestMapping(value = "/{bucket}/response/{responseKey}", method = RequestMethod.POST)
-    ResponseEntity<String> requestWithResponse(@PathVariable String bucket,
+    ResponseEntity<byte[]> postRequestWithResponse(@PathVariable String bucket,
                                                   @PathVariable String responseKey,
                                                   @RequestParam Map<String, String> queryParams,
                                                   @RequestHeader Map<String, String> headers,
-                                                  @RequestBody String body,
-                                                  HttpServletRequest request) {
-        logger.info("POST /{}/response/{}", bucket, responseKey);
+                                                  HttpServletRequest request) throws IOException {
         String path = (String) request.getAttribute(
                 HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
         headers.put(ReqbotHttpHeaders.RESPONSE, responseKey);
-        return handleRequest(request.getMethod(), bucket, queryParams, headers, body, path);
+        return handleRequest(request.getMethod(), bucket, queryParams, headers, capture(request), path);
     }
 
     @ResponseBody
     @RequestMapping(value = "/{bucket}/**", method = RequestMethod.POST)
-    ResponseEntity<String> request(@PathVariable String bucket,
+    ResponseEntity<byte[]> postRequest(@PathVariable String bucket,
                                                 @RequestParam Map<String, String> queryParams,
                                                 @RequestHeader Map<String, String> headers,
-                                                @RequestBody String body,
-                                                HttpServletRequest request) {
-        logger.info("POST /{}", bucket);
+                                                HttpServletRequest request) throws IOException {
         String path = (String) request.getAttribute(
                 HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
 
-        return handleRequest(request.getMethod(), bucket, queryParams, headers, body, path);
+        return handleRequest(request.getMethod(), bucket, queryParams, headers, capture(request), path);
     }
 
     @ResponseBody
     @RequestMapping(value = "/{bucket}/**", method = RequestMethod.GET)
-    ResponseEntity<String> request(@PathVariable String bucket,
+    ResponseEntity<byte[]> request(@PathVariable String bucket,
                                                @RequestParam Map<String, String> queryParams,
                                                @RequestHeader Map<String, String> headers,
                                                HttpServletRequest request) {
-        logger.info("GET /{}", bucket);
         String path = (String) request.getAttribute(
                 HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
 
-        return handleRequest(request.getMethod(), bucket, queryParams, headers, null, path);
+        return handleRequest(request.getMethod(), bucket, queryParams, headers, new Request.Builder(), path);
     }
 
-    private ResponseEntity<String> handleRequest(String method,
-                                                String bucket,
-                                                Map<String, String> queryParams,
-                                                Map<String, String> headers,
-                                                String body,
-                                                String path)
-    {
-        saveRequest(method, bucket, queryParams, headers, body, path);
+    @ResponseBody
+    @RequestMapping(value = "/{bucket}/response/{responseKey}", method = RequestMethod.GET, headers = ReqbotHttpHeaders.GO_SLOW)
+    DeferredResult<ResponseEntity<byte[]>> slowRequestWithResponse(@PathVariable String bucket,
+                                                                   @PathVariable String responseKey,
+                                                                   @RequestParam Map<String, String> queryParams,
+                                                                   @RequestHeader Map<String, String> headers,
+                                                                   HttpServletRequest request) {
+        String path = (String) request.getAttribute(
+                HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        headers.put(ReqbotHttpHeaders.RESPONSE, responseKey);
+        return handleSlowRequest(request, bucket, queryParams, headers, new Request.Builder(), path);
+    }
 
-        TreeMap<String, String> caseInsensitiveHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        caseInsensitiveHeaders.putAll(headers);
-        processGoSlowHeader(caseInsensitiveHeaders.get(ReqbotHttpHeaders.GO_SLOW));
-        HttpStatus status = processHttpCodeHeader(caseInsensitiveHeaders.get(ReqbotHttpHeaders.HTTP_CODE));
+    @ResponseBody
+    @RequestMapping(value = "/{bucket}/response/{responseKey}", method = RequestMethod.POST, headers = ReqbotHttpHeaders.GO_SLOW)
+    DeferredResult<ResponseEntity<byte[]>> slowPostRequestWithResponse(@PathVariable String bucket,
+                                                                   @PathVariable String responseKey,
+                                                                   @RequestParam Map<String, String> queryParams,
+                                                                   @RequestHeader Map<String, String> headers,
+                                                                   HttpServletRequest request) throws IOException {
+        String path = (String) request.getAttribute(
+                HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        headers.put(ReqbotHttpHeaders.RESPONSE, responseKey);
+        return handleSlowRequest(request, bucket, queryParams, headers, capture(request), path);
+    }
 
-        Response response = new Response.Builder().body(status.getReasonPhrase()).build();
+    @ResponseBody
+    @RequestMapping(value = "/{bucket}/**", method = RequestMethod.POST, headers = ReqbotHttpHeaders.GO_SLOW)
+    DeferredResult<ResponseEntity<byte[]>> slowPostRequest(@PathVariable String bucket,
+                                                       @RequestParam Map<String, String> queryParams,
+                                                       @RequestHeader Map<String, String> headers,
+                                                       HttpServletRequest request) throws IOException {
+        String path = (String) request.getAttribute(
+                HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
 
-        HttpHeaders resultHeaders = new HttpHeaders();
+        return handleSlowRequest(request, bucket, queryParams, headers, capture(request), path);
+    }
 
-        if (!isResponseHeaderSet(caseInsensitiveHeaders)) {
-            response = responseRepo.get(caseInsensitiveHeaders.get(ReqbotHttpHeaders.RESPONSE));
+    @ResponseBody
+    @RequestMapping(value = "/{bucket}/**", method = RequestMethod.GET, headers = ReqbotHttpHeaders.GO_SLOW)
+    DeferredResult<ResponseEntity<byte[]>> slowRequest(@PathVariable String bucket,
+                                                       @RequestParam Map<String, String> queryParams,
+                                                       @RequestHeader Map<String, String> headers,
+                                                       HttpServletRequest request) {
+        String path = (String) request.getAttribute(
+                HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
 
-            if (response == null) {
-                throw new UnableToReturnRequestedResponse();
-            }
-            response.getHeaders().forEach(resultHeaders::add);
-        }
+        return handleSlowRequest(request, bucket, queryParams, headers, new Request.Builder(), path);
+    }
 
-        resultHeaders.add("X-REQBOT-PATH", path);
+    // the response is worked out straight away, only sending it is delayed so no worker thread is held. a call
+    // that fails waits just as long before its error is sent
+    private DeferredResult<ResponseEntity<byte[]>> handleSlowRequest(HttpServletRequest request,
+                                                                     String bucket,
+                                                                     Map<String, String> queryParams,
+                                                                     Map<String, String> headers,
+                                                                     Request.Builder captured,
+                                                                     String path)
+    {
+        Capturer.Reply reply = capturer.respond(request.getMethod(), bucket, queryParams, headers, captured, path);
 
-        resultHeaders.add("X-REQBOT-QUERYSTRING", buildQueryString(queryParams));
+        if (reply.getError() != null) {
+            return delayScheduler.fail(reply.getError(), reply.getDelay());
+        }
 
-        return new ResponseEntity<>(response.getBody(), resultHeaders, status);
+        reply.waiting();
+        return delayScheduler.complete(reply::toEntity, reply.getDelay());
     }
 
-    private String buildQueryString(Map<String, String> params) {
-        StringBuilder queryString = new StringBuilder();
-        params.forEach((key, value) -> {
-            queryString.append("&").append(key).append("=").append(value);
-        });
-
-        if (queryString.length()>0) queryString.deleteCharAt(0);
-
-        return queryString.toString();
+    private ResponseEntity<byte[]> handleRequest(String method,
+                                                String bucket,
+                                                Map<String, String> queryParams,
+                                                Map<String, String> headers,
+                                                Request.Builder captured,
+                                                String path)
+    {
+        return capturer.respond(method, bucket, queryParams, headers, captured, path).toEntity();
     }
 
-    private boolean isResponseHeaderSet(TreeMap<String, String> caseInsensitiveHeaders) {
-        return caseInsensitiveHeaders.get(ReqbotHttpHeaders.RESPONSE) == null;
+    // form posts have already been read for their parameters, spring puts the body back together for those
+    private Request.Builder capture(HttpServletRequest request) throws IOException {
+        return capturer.body(new ServletServerHttpRequest(request).getBody(), request.getContentLength(), request.getContentType());
     }
 
-    private void saveRequest(String method,
-                             String bucket,
-                             Map<String, String> queryParams,
-                             Map<String, String> headers,
-                             String body,
-                             String path)
-    {
-        Request request = new Request.Builder()
-                .bucket(bucket)
-                .headers(headers)
-                .body(body)
-                .queryParameters(queryParams)
-                .method(method)
-                .path(path)
-                .build();
-
-        save(request);
+    private static String jsonArray(List<String> json) {
+        return "[" + String.join(",", json) + "]";
     }
 
-    private HttpStatus processHttpCodeHeader(String x_reqbot_http_code) {
-        if (x_reqbot_http_code == null || x_reqbot_http_code.isEmpty()) {
-            return HttpStatus.OK;
-        }
+    private int checkPage(long cursor, Integer limit) {
+        if (cursor < 0 || (limit != null && limit < 1)) throw new InvalidPageException();
 
-        return HttpStatus.valueOf(Integer.parseInt(x_reqbot_http_code));
+        return limit == null ? Integer.MAX_VALUE : limit;
     }
 
-    private void processGoSlowHeader(String x_reqbot_go_slow) {
-        if (x_reqbot_go_slow == null || x_reqbot_go_slow.isEmpty()) {
-            return;
+    // the repos are asked for one more than the page size, if it turns up there is another page after this one
+    private List<String> page(List<String> fetched, long cursor, int pageSize, HttpServletResponse response) {
+        if (fetched.size() <= pageSize) {
+            return fetched;
         }
 
-        try {
-            Thread.sleep(Integer.parseInt(x_reqbot_go_slow));
-        }
-        catch (InterruptedException e) {
-            throw new RuntimeException("InterruptedException", e);
-        }
-    }
-
-    private void save(Request request) {
-        requestRepo.save(request);
+        response.setHeader(ReqbotHttpHeaders.NEXT_CURSOR, String.valueOf(cursor + pageSize));
+        return fetched.subList(0, pageSize);
     }
 }
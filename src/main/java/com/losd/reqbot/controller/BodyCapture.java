@@ -0,0 +1,147 @@
+package com.losd.reqbot.controller;
+
+import com.google.common.io.BaseEncoding;
+import com.losd.reqbot.model.Request;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+class BodyCapture {
+    static final String BASE64 = "base64";
+
+    private static final int CHUNK = 8192;
+
+    private final int maxBytes;
+
+    BodyCapture(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // reads straight off the stream, so the body is decoded once and anything past maxBytes is only hashed
+    void capture(InputStream in, int contentLength, Charset charset, Request.Builder builder) throws IOException {
+        byte[] captured = new byte[contentLength < 0 ? Math.min(CHUNK, maxBytes) : Math.min(contentLength, maxBytes)];
+        int length = 0;
+
+        while (length < maxBytes) {
+            // a body that matches its content length ends here, so a byte is read to find out before growing
+            if (length == captured.length) {
+                int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+
+                captured = Arrays.copyOf(captured, (int) Math.min(maxBytes, captured.length * 2L + 1));
+                captured[length++] = (byte) next;
+                continue;
+            }
+
+            int read = in.read(captured, length, captured.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+
+        byte[] overflow = new byte[1];
+        boolean truncated = length == maxBytes && in.read(overflow) > 0;
+
+        if (truncated) {
+            MessageDigest sha256 = sha256();
+            sha256.update(captured, 0, length);
+            sha256.update(overflow);
+
+            long total = length + 1L;
+            byte[] chunk = new byte[CHUNK];
+            for (int read = in.read(chunk); read >= 0; read = in.read(chunk)) {
+                sha256.update(chunk, 0, read);
+                total += read;
+            }
+
+            builder.truncated(total, BaseEncoding.base16().lowerCase().encode(sha256.digest()));
+        }
+
+        if (length == 0) {
+            return;
+        }
+
+        String text = decode(captured, length, charset == null ? StandardCharsets.UTF_8 : charset, !truncated);
+        if (text != null) {
+            builder.body(text);
+            return;
+        }
+
+        builder.bodyEncoding(BASE64).body(BaseEncoding.base64().encode(captured, 0, length));
+    }
+
+    // null when the bytes aren't text in the request's charset, a character cut in half by truncation is dropped.
+    // they are checked a chunk at a time so the only full size copy is the string itself
+    private static String decode(byte[] bytes, int length, Charset charset, boolean complete) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, length);
+        CharBuffer out = CharBuffer.allocate(Math.min(length, CHUNK));
+
+        CoderResult result;
+        do {
+            out.clear();
+            result = decoder.decode(in, out, complete);
+        } while (result.isOverflow());
+
+        if (result.isError() || (complete && decoder.flush(out).isError())) {
+            return null;
+        }
+
+        return new String(bytes, 0, in.position(), charset);
+    }
+
+    // a content type that can't be parsed is no reason to turn the request away, the body is tried as utf-8
+    static Charset charset(String contentType) {
+        try {
+            return contentType == null ? null : MediaType.parseMediaType(contentType).getCharSet();
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.losd.reqbot.controller;
+
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.jfr.CaptureEvent;
+import com.losd.reqbot.jfr.Flight;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.CompiledResponse;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import com.losd.reqbot.repository.RequestRepo;
+import com.losd.reqbot.repository.ResponseRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// saves a captured call and works out what it is answered with. ApiController and NativeCaptureHandler both come
+// through here, they only differ in how they read the call, wait for a go slow and send the reply
+@Component
+public class Capturer {
+    @Autowired
+    private RequestRepo requestRepo = null;
+
+    @Autowired
+    private ResponseRepo responseRepo = null;
+
+    @Autowired
+    private RequestSettings requestSettings = null;
+
+    @Autowired
+    private ReqbotMetrics metrics = null;
+
+    public Request.Builder body(InputStream in, int contentLength, String contentType) throws IOException {
+        Request.Builder captured = new Request.Builder();
+        new BodyCapture(requestSettings.getMaxCapturedBytes()).capture(in, contentLength, BodyCapture.charset(contentType), captured);
+
+        return captured;
+    }
+
+    // a call that can't be answered still gets a reply, carrying the error, so it can wait as long as any other
+    public Reply respond(String method,
+                         String bucket,
+                         Map<String, String> queryParams,
+                         Map<String, String> headers,
+                         Request.Builder captured,
+                         String path)
+    {
+        ServerTiming timing = requestSettings.isServerTiming() ? new ServerTiming() : null;
+        long delay = 0;
+
+        try {
+            delay = processGoSlowHeader(header(headers, ReqbotHttpHeaders.GO_SLOW));
+            return answer(method, bucket, queryParams, headers, captured, path, delay, timing);
+        }
+        catch (RuntimeException e) {
+            return new Reply(e, delay);
+        }
+    }
+
+    private Reply answer(String method,
+                         String bucket,
+                         Map<String, String> queryParams,
+                         Map<String, String> headers,
+                         Request.Builder captured,
+                         String path,
+                         long delay,
+                         ServerTiming timing)
+    {
+        CaptureEvent event = Flight.capture();
+
+        Request request = captured
+                .bucket(bucket)
+                .headers(headers)
+                .queryParameters(queryParams)
+                .method(method)
+                .path(path)
+                .build();
+
+        long start = System.nanoTime();
+        requestRepo.save(request);
+        long saveNanos = System.nanoTime() - start;
+        metrics.timer(ReqbotMetrics.CAPTURE_SAVE).record(saveNanos);
+        if (timing != null) {
+            timing.saved(saveNanos);
+        }
+
+        HttpStatus status = processHttpCodeHeader(header(headers, ReqbotHttpHeaders.HTTP_CODE));
+
+        CompiledResponse response = CompiledResponse.reason(status);
+        String responseKey = header(headers, ReqbotHttpHeaders.RESPONSE);
+
+        if (responseKey != null) {
+            start = System.nanoTime();
+            Response programmed = responseRepo.get(responseKey);
+            long lookupNanos = System.nanoTime() - start;
+            metrics.timer(ReqbotMetrics.CAPTURE_LOOKUP).record(lookupNanos);
+            if (timing != null) {
+                timing.lookedUp(lookupNanos);
+            }
+
+            if (programmed == null) {
+                throw new UnableToReturnRequestedResponse();
+            }
+            response = programmed.compiled();
+        }
+
+        // the compiled headers are shared, so they are copied rather than added to
+        HttpHeaders replyHeaders = new HttpHeaders();
+        replyHeaders.putAll(response.getHeaders());
+        replyHeaders.set(ReqbotHttpHeaders.PATH, path);
+        replyHeaders.set(ReqbotHttpHeaders.QUERYSTRING, buildQueryString(queryParams));
+
+        if (event != null) {
+            event.finish(request, status.value());
+        }
+
+        return new Reply(status, response.getBody(), replyHeaders, delay, timing);
+    }
+
+    static String buildQueryString(Map<String, String> params) {
+        StringBuilder queryString = new StringBuilder();
+        params.forEach((key, value) -> {
+            queryString.append("&").append(key).append("=").append(value);
+        });
+
+        if (queryString.length()>0) queryString.deleteCharAt(0);
+
+        return queryString.toString();
+    }
+
+    // there are only ever a handful of headers, so looking through them beats copying them into a case insensitive map.
+    // the last one wins, which is the one the path put there
+    static String header(Map<String, String> headers, String name) {
+        String value = null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                value = header.getValue();
+            }
+        }
+        return value;
+    }
+
+    static HttpStatus processHttpCodeHeader(String x_reqbot_http_code) {
+        if (x_reqbot_http_code == null || x_reqbot_http_code.isEmpty()) {
+            return HttpStatus.OK;
+        }
+
+        return HttpStatus.valueOf(Integer.parseInt(x_reqbot_http_code));
+    }
+
+    static long processGoSlowHeader(String x_reqbot_go_slow) {
+        if (x_reqbot_go_slow == null || x_reqbot_go_slow.isEmpty()) {
+            return 0;
+        }
+
+        return Integer.parseInt(x_reqbot_go_slow);
+    }
+
+    public static final class Reply {
+        private final HttpStatus status;
+        private final byte[] body;
+        private final HttpHeaders headers;
+        private final RuntimeException error;
+        private final long delay;
+        private final ServerTiming timing;
+
+        Reply(HttpStatus status, byte[] body, HttpHeaders headers, long delay, ServerTiming timing) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+            this.error = null;
+            this.delay = delay;
+            this.timing = timing;
+        }
+
+        Reply(RuntimeException error, long delay) {
+            this.status = null;
+            this.body = null;
+            this.headers = null;
+            this.error = error;
+            this.delay = delay;
+            this.timing = null;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        // the timings can only be added once any wait is over, so this is asked for as the reply goes out
+        public HttpHeaders getHeaders() {
+            if (timing != null) {
+                headers.set(ReqbotHttpHeaders.SERVER_TIMING, timing.header());
+            }
+            return headers;
+        }
+
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public long getDelay() {
+            return delay;
+        }
+
+        public void waiting() {
+            if (timing != null) {
+                timing.waiting();
+            }
+        }
+
+        public ResponseEntity<byte[]> toEntity() {
+            if (error != null) {
+                throw error;
+            }
+            return new ResponseEntity<>(body, getHeaders(), status);
+        }
+    }
+}
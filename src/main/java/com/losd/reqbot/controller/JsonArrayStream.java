@@ -0,0 +1,86 @@
+package com.losd.reqbot.controller;
+
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.repository.PageConsumer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+class JsonArrayStream implements PageConsumer {
+    static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    private final HttpServletResponse response;
+    private ServletOutputStream out = null;
+
+    JsonArrayStream(HttpServletResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public void nextCursor(long cursor) {
+        response.setHeader(ReqbotHttpHeaders.NEXT_CURSOR, String.valueOf(cursor));
+    }
+
+    // each chunk is flushed as soon as it is written so the client isn't kept waiting for the rest
+    @Override
+    public void accept(List<String> elements) {
+        try {
+            for (String element : elements) {
+                if (out == null) {
+                    response.setContentType(CONTENT_TYPE);
+                    out = response.getOutputStream();
+                    out.write('[');
+                }
+                else {
+                    out.write(',');
+                }
+
+                out.write(element.getBytes(StandardCharsets.UTF_8));
+            }
+
+            if (out != null) {
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // nothing has been written if there was nothing to write, so it isn't too late to send a 404
+    void finish() throws IOException {
+        if (out == null) {
+            throw new ResourceNotFoundException();
+        }
+
+        out.write(']');
+        out.flush();
+    }
+}
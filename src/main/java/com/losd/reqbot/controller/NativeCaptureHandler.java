@@ -0,0 +1,280 @@
+package com.losd.reqbot.controller;
+
+import com.google.gson.Gson;
+import com.losd.reqbot.accesslog.AccessLog;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.jfr.Flight;
+import com.losd.reqbot.jfr.GoSlowEvent;
+import com.losd.reqbot.metrics.LatencyTimer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.Request;
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.*;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.servlet.handler.AbstractHandlerMethodMapping;
+import org.springframework.web.servlet.handler.AbstractUrlHandlerMapping;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.util.NestedServletException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// reads the call straight off the exchange and hands it to the Capturer, as ApiController does for spring
+public class NativeCaptureHandler implements HandlerWrapper, ApplicationContextAware, ApplicationListener<ContextRefreshedEvent> {
+    private static final String RESPONSE_SEGMENT = "response";
+    private static final String FORM = "application/x-www-form-urlencoded";
+    private static final String HANDLER = "nativeCapture";
+    private static final String ENDPOINT = ReqbotMetrics.ENDPOINT_PREFIX + HANDLER;
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+    private final Gson gson = new Gson();
+
+    private ApplicationContext context = null;
+
+    // nothing is handled here until the context is up and it is known which paths spring maps itself
+    private volatile Routes routes = null;
+
+    @Override
+    public HttpHandler wrap(HttpHandler next) {
+        return exchange -> {
+            Routes current = routes;
+
+            if (current == null || !current.captures(exchange)) {
+                next.handleRequest(exchange);
+                return;
+            }
+
+            long start = System.nanoTime();
+            exchange.addExchangeCompleteListener((ex, nextListener) -> {
+                long nanos = System.nanoTime() - start;
+                current.endpoint.record(nanos);
+                current.accessLog.log(ex.getRequestMethod().toString(), ex.getRequestURI(), firstSegment(ex.getRequestPath()),
+                        HANDLER, ex.getResponseCode(), nanos);
+                nextListener.proceed();
+            });
+
+            if (exchange.isInIoThread()) {
+                exchange.dispatch(ex -> capture(ex, current));
+                return;
+            }
+
+            capture(exchange, current);
+        };
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext context) {
+        this.context = context;
+    }
+
+    // a child context, such as the management one on its own port, is refreshed through its parent's listeners too,
+    // and doesn't have the mappings or beans the routes are built from
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() != context) {
+            return;
+        }
+
+        Set<String> reserved = new HashSet<>();
+        List<String> patterns = new ArrayList<>();
+
+        for (AbstractHandlerMethodMapping<?> mapping : context.getBeansOfType(AbstractHandlerMethodMapping.class).values()) {
+            for (Object info : mapping.getHandlerMethods().keySet()) {
+                if (info instanceof RequestMappingInfo) {
+                    ((RequestMappingInfo) info).getPatternsCondition().getPatterns().forEach(pattern -> reserve(pattern, reserved, patterns));
+                }
+            }
+        }
+
+        for (AbstractUrlHandlerMapping mapping : context.getBeansOfType(AbstractUrlHandlerMapping.class).values()) {
+            mapping.getHandlerMap().keySet().forEach(pattern -> reserve(pattern, reserved, patterns));
+        }
+
+        routes = new Routes(context.getBean(Capturer.class), context.getBean(ReqbotMetrics.class),
+                context.getBean(AccessLog.class), reserved, patterns);
+    }
+
+    // a path is left to spring if it starts with a segment spring has its own mapping for. the capture mappings
+    // start with {bucket} and /** is the static resources, which the capture mappings already beat
+    private void reserve(String pattern, Set<String> reserved, List<String> patterns) {
+        if (pattern.startsWith("/{") || pattern.equals("/**")) {
+            return;
+        }
+
+        String first = firstSegment(pattern);
+        if (matcher.isPattern(first)) {
+            patterns.add(pattern);
+        }
+        else {
+            reserved.add(first);
+        }
+    }
+
+    private void capture(HttpServerExchange exchange, Routes routes) throws IOException {
+        String path = exchange.getRequestPath();
+        String[] segments = path.substring(1).split("/", -1);
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (HeaderValues values : exchange.getRequestHeaders()) {
+            headers.put(values.getHeaderName().toString(), values.getFirst());
+        }
+
+        // the same as /{bucket}/response/{responseKey} in ApiController, it only matches exactly three segments
+        if (segments.length == 3 && segments[1].equals(RESPONSE_SEGMENT) && !segments[2].isEmpty()) {
+            headers.put(ReqbotHttpHeaders.RESPONSE, segments[2]);
+        }
+
+        // the exchange keeps its parameters sorted, spring has them in the order they were sent
+        Map<String, String> queryParams = new LinkedHashMap<>();
+        QueryParameterUtils.parseQueryString(exchange.getQueryString(), StandardCharsets.UTF_8.name())
+                .forEach((name, values) -> queryParams.put(name, values.getFirst()));
+
+        Request.Builder captured = new Request.Builder();
+        if (Methods.POST.equals(exchange.getRequestMethod())) {
+            exchange.startBlocking();
+            captured = routes.capturer.body(exchange.getInputStream(), (int) exchange.getRequestContentLength(),
+                    exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE));
+        }
+
+        Capturer.Reply reply = routes.capturer.respond(exchange.getRequestMethod().toString(), segments[0], queryParams,
+                headers, captured, path);
+
+        send(exchange, reply, routes.goSlow);
+    }
+
+    // a slow reply waits on the io thread's timer, so no worker is held while it waits
+    private void send(HttpServerExchange exchange, Capturer.Reply reply, LatencyTimer waited) {
+        long delay = reply.getDelay();
+
+        if (delay <= 0) {
+            finish(exchange, reply);
+            return;
+        }
+
+        long start = System.nanoTime();
+        reply.waiting();
+        GoSlowEvent event = Flight.goSlow();
+        exchange.dispatch(SameThreadExecutor.INSTANCE, () -> exchange.getIoThread().executeAfter(() -> {
+            waited.recordSince(start);
+            if (event != null) {
+                event.finish(delay);
+            }
+            exchange.getConnection().getWorker().execute(() -> finish(exchange, reply));
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    private void finish(HttpServerExchange exchange, Capturer.Reply reply) {
+        if (reply.getError() != null) {
+            error(exchange, reply.getError());
+            return;
+        }
+
+        exchange.setResponseCode(reply.getStatus().value());
+
+        HeaderMap responseHeaders = exchange.getResponseHeaders();
+        reply.getHeaders().forEach((name, values) -> responseHeaders.addAll(HttpString.tryFromString(name), values));
+
+        exchange.getResponseSender().send(ByteBuffer.wrap(reply.getBody()));
+    }
+
+    // the same status and body spring boot's error controller sends for the exception
+    private void error(HttpServerExchange exchange, Exception exception) {
+        ResponseStatus declared = AnnotationUtils.findAnnotation(exception.getClass(), ResponseStatus.class);
+        HttpStatus status = declared == null ? HttpStatus.INTERNAL_SERVER_ERROR : declared.value();
+
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("timestamp", System.currentTimeMillis());
+        error.put("status", status.value());
+        error.put("error", status.getReasonPhrase());
+        error.put("exception", exception.getClass().getName());
+        // spring's dispatcher wraps anything it doesn't handle itself, and that is the message the error controller sees
+        error.put("message", declared == null ? new NestedServletException("Request processing failed", exception).getMessage()
+                : declared.reason());
+        error.put("path", exchange.getRequestPath());
+
+        exchange.setResponseCode(status.value());
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, JsonArrayStream.CONTENT_TYPE);
+        exchange.getResponseSender().send(gson.toJson(error));
+    }
+
+    private static String firstSegment(String path) {
+        int end = path.indexOf('/', 1);
+        return end < 0 ? path.substring(1) : path.substring(1, end);
+    }
+
+    private final class Routes {
+        final Capturer capturer;
+        final LatencyTimer endpoint;
+        final LatencyTimer goSlow;
+        final AccessLog accessLog;
+        final Set<String> reserved;
+        final List<String> patterns;
+
+        Routes(Capturer capturer, ReqbotMetrics metrics, AccessLog accessLog, Set<String> reserved, List<String> patterns) {
+            this.capturer = capturer;
+            this.endpoint = metrics.timer(ENDPOINT);
+            this.goSlow = metrics.timer(ReqbotMetrics.CAPTURE_GO_SLOW);
+            this.accessLog = accessLog;
+            this.reserved = reserved;
+            this.patterns = patterns;
+        }
+
+        // form posts are left to spring, which puts their body back together from the parameters
+        boolean captures(HttpServerExchange exchange) {
+            HttpString method = exchange.getRequestMethod();
+            if (!Methods.GET.equals(method) && !Methods.POST.equals(method)) {
+                return false;
+            }
+
+            String path = exchange.getRequestPath();
+            String bucket = firstSegment(path);
+            if (bucket.isEmpty() || reserved.contains(bucket)) {
+                return false;
+            }
+
+            for (String pattern : patterns) {
+                if (matcher.match(pattern, path)) {
+                    return false;
+                }
+            }
+
+            String contentType = exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE);
+            return !(Methods.POST.equals(method) && contentType != null && contentType.startsWith(FORM));
+        }
+    }
+}
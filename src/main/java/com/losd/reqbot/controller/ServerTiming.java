@@ -0,0 +1,72 @@
+package com.losd.reqbot.controller;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+final class ServerTiming {
+    // the body has been read by the time this starts, how long that takes is down to the client
+    private final long start = System.nanoTime();
+    private long saveNanos = -1;
+    private long lookupNanos = -1;
+    private long waitStart = -1;
+
+    void saved(long nanos) {
+        saveNanos = nanos;
+    }
+
+    void lookedUp(long nanos) {
+        lookupNanos = nanos;
+    }
+
+    void waiting() {
+        waitStart = System.nanoTime();
+    }
+
+    // called as the response goes out, so a go slow wait is part of the total
+    String header() {
+        long now = System.nanoTime();
+        StringBuilder header = new StringBuilder();
+
+        entry(header, "save", saveNanos);
+        entry(header, "lookup", lookupNanos);
+        entry(header, "goslow", waitStart < 0 ? -1 : now - waitStart);
+        entry(header, "total", now - start);
+
+        return header.toString();
+    }
+
+    private static void entry(StringBuilder header, String name, long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=")
+                .append(String.format(Locale.ROOT, "%.3f", TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0));
+    }
+}
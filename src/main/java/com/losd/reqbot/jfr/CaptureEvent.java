@@ -0,0 +1,89 @@
+package com.losd.reqbot.jfr;
+
+import com.google.common.base.Utf8;
+import com.losd.reqbot.model.Request;
+import jdk.jfr.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Name("reqbot.Capture")
+@Label("Request Capture")
+@Category("reqbot")
+@Description("A request captured into a bucket, from saving it to having the response ready")
+@StackTrace(false)
+public class CaptureEvent extends Event {
+    @Label("Bucket")
+    String bucket;
+
+    @Label("Method")
+    String method;
+
+    @Label("Body Size")
+    @Description("The size of the body that was sent, or of what was kept of it when it wasn't cut short")
+    @DataAmount
+    long bodyBytes;
+
+    @Label("Status")
+    int status;
+
+    // null when the event is off, so nothing else is done for it
+    static CaptureEvent start() {
+        CaptureEvent event = new CaptureEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public void finish(Request request, int status) {
+        end();
+        if (shouldCommit()) {
+            this.bucket = request.getBucket();
+            this.method = request.getMethod();
+            this.bodyBytes = bodyBytes(request);
+            this.status = status;
+            commit();
+        }
+    }
+
+    private static long bodyBytes(Request request) {
+        if (request.getBodyLength() != null) {
+            return request.getBodyLength();
+        }
+
+        String body = request.getBody();
+        if (body == null) {
+            return 0;
+        }
+
+        if ("base64".equals(request.getBodyEncoding())) {
+            int padding = body.endsWith("==") ? 2 : body.endsWith("=") ? 1 : 0;
+            return body.length() / 4 * 3 - padding;
+        }
+
+        return Utf8.encodedLength(body);
+    }
+}
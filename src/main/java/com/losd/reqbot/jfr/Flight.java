@@ -0,0 +1,71 @@
+package com.losd.reqbot.jfr;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public final class Flight {
+    // jdk.jfr is only in openjdk 8 from 8u262, without it the event classes are never loaded
+    public static final boolean AVAILABLE = available();
+
+    // on 8 an event that is switched off still costs an allocation, so none are made until something is recording
+    private static volatile boolean recording = false;
+
+    static {
+        if (AVAILABLE) {
+            RecordingWatcher.watch();
+        }
+    }
+
+    private Flight() {
+    }
+
+    public static CaptureEvent capture() {
+        return recording ? CaptureEvent.start() : null;
+    }
+
+    public static ResponseLookupEvent responseLookup() {
+        return recording ? ResponseLookupEvent.start() : null;
+    }
+
+    public static SerializationEvent serialization() {
+        return recording ? SerializationEvent.start() : null;
+    }
+
+    public static GoSlowEvent goSlow() {
+        return recording ? GoSlowEvent.start() : null;
+    }
+
+    static void recording(boolean running) {
+        recording = running;
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Flight.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.losd.reqbot.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Name("reqbot.GoSlow")
+@Label("Go Slow Wait")
+@Category("reqbot")
+@Description("The wait before a response asked for with X-REQBOT-GO-SLOW is sent")
+@StackTrace(false)
+public class GoSlowEvent extends Event {
+    @Label("Requested Delay")
+    @Timespan(Timespan.MILLISECONDS)
+    long requestedMillis;
+
+    static GoSlowEvent start() {
+        GoSlowEvent event = new GoSlowEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    // called on the thread that sends the response, the wait itself doesn't run on one
+    public void finish(long requestedMillis) {
+        end();
+        if (shouldCommit()) {
+            this.requestedMillis = requestedMillis;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.losd.reqbot.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Name("reqbot.ResponseLookup")
+@Label("Response Lookup")
+@Category("reqbot")
+@Description("A programmed response fetched from the response cache or from redis")
+@StackTrace(false)
+public class ResponseLookupEvent extends Event {
+    public static final String CACHE = "cache";
+    public static final String REDIS = "redis";
+
+    @Label("Response Key")
+    String responseKey;
+
+    @Label("Source")
+    String source;
+
+    @Label("Found")
+    boolean found;
+
+    static ResponseLookupEvent start() {
+        ResponseLookupEvent event = new ResponseLookupEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public void finish(String responseKey, String source, boolean found) {
+        end();
+        if (shouldCommit()) {
+            this.responseKey = responseKey;
+            this.source = source;
+            this.found = found;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.losd.reqbot.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Name("reqbot.Serialization")
+@Label("Serialization")
+@Category("reqbot")
+@Description("A request or response written for storage, or read back from it")
+@StackTrace(false)
+public class SerializationEvent extends Event {
+    public static final String ENCODE = "encode";
+    public static final String DECODE = "decode";
+    public static final String JSON = "json";
+
+    public static final String REQUEST = "request";
+    public static final String RESPONSE = "response";
+
+    @Label("Operation")
+    @Description("encode, decode, or json for turning a stored entry into what the api sends")
+    String operation;
+
+    @Label("Entry")
+    String entry;
+
+    @Label("Format")
+    @Description("The format the entry is stored in, json or binary")
+    String format;
+
+    @Label("Stored Size")
+    @DataAmount
+    long storedBytes;
+
+    static SerializationEvent start() {
+        SerializationEvent event = new SerializationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public void finish(String operation, String entry, boolean binary, long storedBytes) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.entry = entry;
+            this.format = binary ? "binary" : "json";
+            this.storedBytes = storedBytes;
+            commit();
+        }
+    }
+}
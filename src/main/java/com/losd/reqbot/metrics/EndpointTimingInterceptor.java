@@ -0,0 +1,76 @@
+package com.losd.reqbot.metrics;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class EndpointTimingInterceptor extends HandlerInterceptorAdapter {
+    static final String START = EndpointTimingInterceptor.class.getName() + ".start";
+
+    private final ReqbotMetrics metrics;
+    private final ConcurrentMap<HandlerMethod, LatencyTimer> timers = new ConcurrentHashMap<>();
+
+    public EndpointTimingInterceptor(ReqbotMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // a deferred result comes back through here a second time, it is timed from when it first arrived
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(START) == null) {
+            request.setAttribute(START, System.nanoTime());
+        }
+        return true;
+    }
+
+    // only called once a deferred result has been sent, not when the handler hands it back
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START);
+        request.removeAttribute(START);
+
+        if (start != null && handler instanceof HandlerMethod) {
+            timer((HandlerMethod) handler).recordSince((Long) start);
+        }
+    }
+
+    private LatencyTimer timer(HandlerMethod handler) {
+        LatencyTimer timer = timers.get(handler);
+        if (timer != null) {
+            return timer;
+        }
+
+        // the actuator endpoints all share one handler method, so the bean's class tells them apart
+        String name = ReqbotMetrics.ENDPOINT_PREFIX + ClassUtils.getUserClass(handler.getBeanType()).getSimpleName()
+                + "." + handler.getMethod().getName();
+        return timers.computeIfAbsent(handler, key -> metrics.timer(name));
+    }
+}
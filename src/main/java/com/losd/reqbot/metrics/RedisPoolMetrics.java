@@ -0,0 +1,94 @@
+package com.losd.reqbot.metrics;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class RedisPoolMetrics implements PublicMetrics {
+    public static final String JMX_NAME_BASE = "org.apache.commons.pool2:type=GenericObjectPool,name=";
+    public static final String JMX_NAME_PREFIX = "reqbot-redis";
+
+    private static final String PREFIX = ReqbotMetrics.REDIS_PREFIX + "pool.";
+    private static final String MEAN_BORROW_WAIT = "MeanBorrowWaitTimeMillis";
+    private static final String[] ATTRIBUTES = {"NumActive", "NumIdle", "NumWaiters", "MaxTotal", MEAN_BORROW_WAIT};
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final ObjectName pools;
+
+    public RedisPoolMetrics() {
+        try {
+            pools = new ObjectName(JMX_NAME_BASE + JMX_NAME_PREFIX + "*");
+        }
+        catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // commons pool registers the jedis pool itself, a second one in the same jvm gets a number on the end
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Map<String, Long> totals = new HashMap<>();
+
+        for (ObjectName pool : server.queryNames(pools, null)) {
+            List<Attribute> attributes;
+            try {
+                attributes = server.getAttributes(pool, ATTRIBUTES).asList();
+            }
+            catch (JMException e) {
+                // the pool was closed between the query and the read
+                continue;
+            }
+
+            // anything that can't be read is left out of the list rather than failing the lot
+            for (Attribute attribute : attributes) {
+                long value = attribute.getValue() instanceof Number ? ((Number) attribute.getValue()).longValue() : 0;
+                totals.merge(attribute.getName(), value, attribute.getName().equals(MEAN_BORROW_WAIT) ? Math::max : Long::sum);
+            }
+        }
+
+        long active = totals.getOrDefault("NumActive", 0L);
+        long maxTotal = totals.getOrDefault("MaxTotal", 0L);
+
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(PREFIX + "active", active));
+        metrics.add(new Metric<>(PREFIX + "idle", totals.getOrDefault("NumIdle", 0L)));
+        metrics.add(new Metric<>(PREFIX + "waiters", totals.getOrDefault("NumWaiters", 0L)));
+        metrics.add(new Metric<>(PREFIX + "maxTotal", maxTotal));
+        metrics.add(new Metric<>(PREFIX + "utilisation", maxTotal > 0 ? (double) active / maxTotal : 0.0));
+        metrics.add(new Metric<>(PREFIX + "meanBorrowWaitMillis", totals.getOrDefault(MEAN_BORROW_WAIT, 0L)));
+        return metrics;
+    }
+}
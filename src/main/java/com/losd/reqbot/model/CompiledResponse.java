@@ -0,0 +1,96 @@
+package com.losd.reqbot.model;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public final class CompiledResponse {
+    static final MediaType DEFAULT_CONTENT_TYPE = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+    private static final Map<HttpStatus, CompiledResponse> REASONS = new EnumMap<>(HttpStatus.class);
+
+    static {
+        for (HttpStatus status : HttpStatus.values()) {
+            REASONS.put(status, compile(new Response.Builder().body(status.getReasonPhrase()).build()));
+        }
+    }
+
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    private CompiledResponse(HttpHeaders headers, byte[] body) {
+        this.headers = headers;
+        this.body = body;
+    }
+
+    // the body is encoded in the charset of its content type, the same as spring would when writing the string
+    public static CompiledResponse compile(Response response) {
+        HttpHeaders headers = new HttpHeaders();
+        response.getHeaders().forEach(headers::add);
+
+        MediaType contentType = contentType(headers);
+        if (contentType == null) {
+            contentType = DEFAULT_CONTENT_TYPE;
+        }
+        headers.setContentType(contentType);
+
+        Charset charset = contentType.getCharSet() == null ? StandardCharsets.UTF_8 : contentType.getCharSet();
+        byte[] body = response.getBody() == null ? new byte[0] : response.getBody().getBytes(charset);
+        headers.setContentLength(body.length);
+
+        return new CompiledResponse(HttpHeaders.readOnlyHttpHeaders(headers), body);
+    }
+
+    public static CompiledResponse reason(HttpStatus status) {
+        return REASONS.get(status);
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    private static MediaType contentType(HttpHeaders headers) {
+        try {
+            MediaType contentType = headers.getContentType();
+            if (contentType != null) {
+                contentType.getCharSet();
+            }
+            return contentType;
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
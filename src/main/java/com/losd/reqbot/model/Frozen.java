@@ -0,0 +1,75 @@
+package com.losd.reqbot.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+final class Frozen {
+    private Frozen() {
+    }
+
+    // guava keeps no and one entry maps in their own small classes, and copying something already frozen is free
+    static Map<String, String> map(Map<String, String> map) {
+        return map == null || map instanceof ImmutableMap ? map : ImmutableMap.copyOf(map);
+    }
+
+    static List<String> list(List<String> list) {
+        return list == null || list instanceof ImmutableList ? list : ImmutableList.copyOf(list);
+    }
+
+    // a builder borrows the first map it is given and only copies it when something is added on top
+    static final class MapBuilder {
+        private Map<String, String> map = ImmutableMap.of();
+        private boolean owned = false;
+
+        void put(String key, String value) {
+            owned().put(key, value);
+        }
+
+        void putAll(Map<String, String> other) {
+            if (!owned && map.isEmpty()) {
+                map = other;
+                return;
+            }
+            owned().putAll(other);
+        }
+
+        Map<String, String> build() {
+            return map(map);
+        }
+
+        private Map<String, String> owned() {
+            if (!owned) {
+                map = new HashMap<>(map);
+                owned = true;
+            }
+            return map;
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package com.losd.reqbot.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.google.common.collect.ImmutableMap;
+import com.google.gson.annotations.JsonAdapter;
 
 import java.time.Instant;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -39,36 +39,54 @@ public class Request {
     private String body;
     private Map<String, String> queryParameters;
     private String method;
-    private String timestamp;
+    // epoch millis, it is only turned into an iso-8601 string when the request is written out. it is boxed because
+    // gson swaps its own adapter in for a primitive field
+    @JsonAdapter(TimestampAdapter.class)
+    private Long timestamp;
     private UUID uuid;
     private String path;
+    private String bodyEncoding;
+    private Long bodyLength;
+    private String bodySha256;
 
     private Request(String bucket,
                    Map<String, String> headers,
                    String body,
                    Map<String, String> queryParameters,
                    String method,
-                   String path
+                   String path,
+                   Long timestamp,
+                   UUID uuid,
+                   String bodyEncoding,
+                   Long bodyLength,
+                   String bodySha256
     )
     {
         this.bucket = bucket;
-        this.headers = headers;
+        this.headers = Frozen.map(headers);
         this.body = body;
-        this.queryParameters = queryParameters;
+        this.queryParameters = Frozen.map(queryParameters);
         this.method = method;
-        this.timestamp = Instant.now().toString();
-        this.uuid = UUID.randomUUID();
+        this.timestamp = timestamp == null ? System.currentTimeMillis() : timestamp;
+        this.uuid = uuid == null ? Ids.next() : uuid;
         this.path = path;
-
+        this.bodyEncoding = bodyEncoding;
+        this.bodyLength = bodyLength;
+        this.bodySha256 = bodySha256;
     }
 
     public static class Builder {
-        Map<String, String> headers = new HashMap<>();
-        Map<String, String> queryParameters = new HashMap<>();
+        Frozen.MapBuilder headers = new Frozen.MapBuilder();
+        Frozen.MapBuilder queryParameters = new Frozen.MapBuilder();
         String body;
         String method;
         String path;
         String bucket;
+        Long timestamp;
+        UUID uuid;
+        String bodyEncoding;
+        Long bodyLength;
+        String bodySha256;
 
         public Builder bucket(String b) {
             bucket = b;
@@ -110,8 +128,33 @@ public class Request {
             return this;
         }
 
+        // only for reading a stored request back, new requests get the current time and a time ordered uuid
+        public Builder timestamp(long t) {
+            timestamp = t;
+            return this;
+        }
+
+        public Builder uuid(UUID u) {
+            uuid = u;
+            return this;
+        }
+
+        // set when the body was not text, it is then base64
+        public Builder bodyEncoding(String e) {
+            bodyEncoding = e;
+            return this;
+        }
+
+        // set when the body was cut short, the length and hash are of everything that was sent
+        public Builder truncated(long length, String sha256) {
+            bodyLength = length;
+            bodySha256 = sha256;
+            return this;
+        }
+
         public Request build() {
-            return new Request(bucket, headers, body, queryParameters, method, path);
+            return new Request(bucket, headers.build(), body, queryParameters.build(), method, path, timestamp, uuid,
+                    bodyEncoding, bodyLength, bodySha256);
         }
     }
 
@@ -123,8 +166,9 @@ public class Request {
         return uuid;
     }
 
+    // gson sets the fields itself when it reads a request back, so those are frozen the first time they are asked for
     public Map<String, String> getHeaders() {
-        return ImmutableMap.copyOf(this.headers);
+        return headers = Frozen.map(headers);
     }
 
     public String getBody() {
@@ -132,7 +176,7 @@ public class Request {
     }
 
     public Map<String, String> getQueryParameters() {
-        return ImmutableMap.copyOf(this.queryParameters);
+        return queryParameters = Frozen.map(queryParameters);
     }
 
     public String getMethod() {
@@ -140,10 +184,27 @@ public class Request {
     }
 
     public String getTimestamp() {
+        return timestamp == null ? null : Instant.ofEpochMilli(timestamp).toString();
+    }
+
+    @JsonIgnore
+    public long getTimestampMillis() {
         return timestamp;
     }
 
     public String getPath() {
         return path;
     }
+
+    public String getBodyEncoding() {
+        return bodyEncoding;
+    }
+
+    public Long getBodyLength() {
+        return bodyLength;
+    }
+
+    public String getBodySha256() {
+        return bodySha256;
+    }
 }
@@ -1,7 +1,6 @@
 package com.losd.reqbot.model;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 
 import java.util.*;
 
@@ -34,18 +33,22 @@ public class Response {
     UUID uuid;
     List<String> tags;
 
+    // a response never changes once it is built, so it is only compiled the first time it is served
+    private transient volatile CompiledResponse compiled;
+
     private Response(Map<String, String> headers, List<String> tags,
-                    String body
+                    String body, UUID uuid
     )
     {
-        this.headers = headers;
+        this.headers = Frozen.map(headers);
         this.body = body;
-        this.uuid = UUID.randomUUID();
-        this.tags = tags;
+        this.uuid = uuid == null ? Ids.next() : uuid;
+        this.tags = Frozen.list(tags);
     }
 
+    // gson sets the fields itself when it reads a response back, so those are frozen the first time they are asked for
     public Map<String, String> getHeaders() {
-        return ImmutableMap.copyOf(this.headers);
+        return headers = Frozen.map(headers);
     }
 
     public String getBody() {
@@ -57,16 +60,25 @@ public class Response {
     }
 
     public List<String> getTags() {
-        return ImmutableList.copyOf(this.tags);
+        return tags = Frozen.list(tags);
+    }
+
+    public CompiledResponse compiled() {
+        if (compiled == null) {
+            compiled = CompiledResponse.compile(this);
+        }
+
+        return compiled;
     }
 
     public static class Builder {
-        Map<String, String> headers = new HashMap<>();
+        Frozen.MapBuilder headers = new Frozen.MapBuilder();
         String body;
-        List<String> tags = new LinkedList<>();
+        List<String> tags = ImmutableList.of();
+        UUID uuid;
 
         public Response build() {
-            return new Response(headers, tags, body);
+            return new Response(headers.build(), tags, body, uuid);
         }
 
         public Builder addHeader(String header, String value) {
@@ -88,5 +100,11 @@ public class Response {
             tags = t;
             return this;
         }
+
+        // only for reading a stored response back, new responses get a time ordered uuid
+        public Builder uuid(UUID u) {
+            uuid = u;
+            return this;
+        }
     }
 }
@@ -0,0 +1,63 @@
+package com.losd.reqbot.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class TimeOrderedIdGenerator {
+    private static final int MAX_SEQUENCE = 0xfff;
+
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    // a version 7 uuid: 48 bits of epoch millis, a 12 bit sequence and 62 random bits. each thread has its own
+    // sequence, so ids from one thread always go up and ids from different threads are ordered to the millisecond
+    public UUID next() {
+        State current = state.get();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+
+        if (now > current.millis) {
+            // starting the sequence in its bottom half leaves room to count up without running out
+            current.millis = now;
+            current.sequence = random.nextInt(MAX_SEQUENCE / 2);
+        }
+        // the same millisecond, or the clock went back, carries on counting from the last id
+        else if (++current.sequence > MAX_SEQUENCE) {
+            // borrowing the next millisecond when the sequence runs out
+            current.millis++;
+            current.sequence = 0;
+        }
+
+        long msb = current.millis << 16 | 0x7000 | current.sequence;
+        long lsb = random.nextLong() & 0x3fffffffffffffffL | 0x8000000000000000L;
+
+        return new UUID(msb, lsb);
+    }
+
+    private static final class State {
+        long millis = Long.MIN_VALUE;
+        int sequence;
+    }
+}
@@ -0,0 +1,92 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.jfr.Flight;
+import com.losd.reqbot.jfr.ResponseLookupEvent;
+import com.losd.reqbot.model.Response;
+
+import java.util.List;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CachingResponseRepo implements ResponseRepo {
+    private final ResponseRepo delegate;
+    private final ResponseCache cache;
+
+    public CachingResponseRepo(ResponseRepo delegate, ResponseCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    // responses are never changed once they are saved, so there is nothing to invalidate
+    @Override
+    public Response get(String uuid) {
+        ResponseLookupEvent event = Flight.responseLookup();
+        Response response = cache.get(uuid);
+
+        // a miss shows up as a lookup from the store underneath
+        if (response == null) {
+            response = delegate.get(uuid);
+
+            if (response != null) {
+                cache.put(uuid, response);
+            }
+        }
+        else if (event != null) {
+            event.finish(uuid, ResponseLookupEvent.CACHE, true);
+        }
+
+        return response;
+    }
+
+    @Override
+    public void save(Response response) {
+        delegate.save(response);
+        cache.put(response.getUuid().toString(), response);
+    }
+
+    @Override
+    public List<Response> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<Response> getByTag(String tag) {
+        return delegate.getByTag(tag);
+    }
+
+    @Override
+    public void streamRawByTag(String tag, long cursor, int limit, PageConsumer page) {
+        delegate.streamRawByTag(tag, cursor, limit, page);
+    }
+
+    @Override
+    public List<String> getTags() {
+        return delegate.getTags();
+    }
+
+    @Override
+    public List<String> getTags(long cursor, long count) {
+        return delegate.getTags(cursor, count);
+    }
+}
@@ -0,0 +1,413 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.JournalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+final class Journal implements Closeable {
+    // a record is: int payload length, int crc32 of the payload, then the payload of unsigned short key length, key, value
+    private static final int HEADER_BYTES = 8;
+    private static final int KEY_LENGTH_BYTES = 2;
+    private static final int MAX_KEY_BYTES = 0xffff;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    // where a record lives in memory, kept in sync with the journal by the repo that owns it
+    interface Index {
+        // hands back the location that this one has made dead, if any
+        Location add(String key, Location location);
+
+        boolean contains(String key, Location location);
+
+        boolean replace(String key, Location from, Location to);
+    }
+
+    interface Visitor {
+        void visit(String key, Location location);
+    }
+
+    static final class Location {
+        final Segment segment;
+        final int position;
+        final int size;
+        final int valueOffset;
+        final int valueLength;
+
+        Location(Segment segment, int position, int size, int valueOffset, int valueLength) {
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+
+        byte[] value() {
+            ByteBuffer view = segment.buffer.duplicate();
+            view.position(valueOffset);
+
+            byte[] value = new byte[valueLength];
+            view.get(value);
+
+            return value;
+        }
+
+        Location moveTo(Segment to, int position) {
+            return new Location(to, position, size, position + (valueOffset - this.position), valueLength);
+        }
+
+        // a record read back off disk is the same record as the one the index is holding
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Location)) {
+                return false;
+            }
+
+            Location other = (Location) o;
+            return segment == other.segment && position == other.position;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(segment.id) + position;
+        }
+    }
+
+    static final class Segment {
+        final long id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        final AtomicLong live = new AtomicLong();
+
+        volatile int written;
+
+        Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final double compactBelow;
+    private final Index index;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ScheduledExecutorService compactor;
+
+    private volatile Segment active;
+
+    // only touched by the appending thread, while holding the lock
+    private ByteBuffer writer;
+
+    private Journal(Path directory, JournalSettings settings, Index index) {
+        this.directory = directory;
+        this.segmentBytes = settings.getSegmentBytes();
+        this.compactBelow = settings.getCompactBelow();
+        this.index = index;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reqbot-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // replays every segment through the index, oldest first, then carries on appending to the newest one
+    static Journal open(Path directory, JournalSettings settings, Index index) throws IOException {
+        Journal journal = new Journal(directory, settings, index);
+        journal.recover();
+
+        if (settings.getCompactIntervalMillis() > 0) {
+            journal.compactor.scheduleWithFixedDelay(journal::compactQuietly, settings.getCompactIntervalMillis(),
+                    settings.getCompactIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        return journal;
+    }
+
+    synchronized Location append(String key, byte[] valueBytes) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("journal keys must be at most " + MAX_KEY_BYTES + " bytes");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(KEY_LENGTH_BYTES + keyBytes.length + valueBytes.length);
+        payload.putShort((short) keyBytes.length).put(keyBytes).put(valueBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        int size = HEADER_BYTES + payload.capacity();
+        if (writer.remaining() < size) {
+            roll(size);
+        }
+
+        Segment segment = active;
+        int position = writer.position();
+        writer.putInt(payload.capacity()).putInt((int) crc.getValue()).put(payload.array());
+
+        segment.written = writer.position();
+        Location location = new Location(segment, position, size, position + size - valueBytes.length, valueBytes.length);
+        add(key, location);
+
+        return location;
+    }
+
+
+    // copies what is still live out of any segment that has become mostly dead, the newest segment is left alone
+    void compact() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (segment == active) {
+                continue;
+            }
+
+            long live = segment.live.get();
+            if (live == 0 || live < segment.written * compactBelow) {
+                compact(segment);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            active.buffer.force();
+        }
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + COMPACTING_SUFFIX)) {
+            for (Path leftover : leftovers) {
+                Files.delete(leftover);
+            }
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(id, new Segment(id, file, map(file, Files.size(file))));
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            segment.written = forEachRecord(segment, this::add);
+        }
+
+        if (segments.isEmpty()) {
+            activate(create(0, segmentBytes));
+        } else {
+            activate(segments.lastEntry().getValue());
+        }
+    }
+
+    private void add(String key, Location location) {
+        location.segment.live.addAndGet(location.size);
+
+        Location dead = index.add(key, location);
+        if (dead != null) {
+            dead.segment.live.addAndGet(-dead.size);
+        }
+    }
+
+    // walks the records until it runs out of written space or finds one that was only half written
+    private static int forEachRecord(Segment segment, Visitor visitor) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < KEY_LENGTH_BYTES || length > buffer.capacity() - position - HEADER_BYTES) {
+                break;
+            }
+
+            int payloadStart = position + HEADER_BYTES;
+            buffer.limit(payloadStart + length).position(payloadStart);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+
+            int keyLength = buffer.getShort(payloadStart) & MAX_KEY_BYTES;
+            int valueOffset = payloadStart + KEY_LENGTH_BYTES + keyLength;
+            if (valueOffset > payloadStart + length) {
+                break;
+            }
+
+            byte[] key = new byte[keyLength];
+            buffer.position(payloadStart + KEY_LENGTH_BYTES);
+            buffer.get(key);
+            buffer.limit(buffer.capacity());
+
+            int size = HEADER_BYTES + length;
+            visitor.visit(new String(key, UTF_8), new Location(segment, position, size, valueOffset, payloadStart + length - valueOffset));
+            position += size;
+        }
+
+        return position;
+    }
+
+    private void roll(int size) {
+        try {
+            activate(create(active.id + 1, Math.max(segmentBytes, size)));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void activate(Segment segment) {
+        writer = segment.buffer.duplicate();
+        writer.position(segment.written);
+        active = segment;
+    }
+
+    private Segment create(long id, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        Segment segment = new Segment(id, path, map(path, capacity));
+        segments.put(id, segment);
+
+        return segment;
+    }
+
+    private void compact(Segment segment) throws IOException {
+        Path compacting = directory.resolve(segment.path.getFileName() + COMPACTING_SUFFIX);
+        List<String> keys = new ArrayList<>();
+        List<Location> moving = new ArrayList<>();
+
+        try (FileChannel out = FileChannel.open(compacting, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            forEachRecord(segment, (key, location) -> {
+                if (!index.contains(key, location)) {
+                    return;
+                }
+
+                ByteBuffer record = segment.buffer.duplicate();
+                record.limit(location.position + location.size).position(location.position);
+
+                try {
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                keys.add(key);
+                moving.add(location);
+            });
+
+            out.force(true);
+        }
+
+        if (moving.isEmpty()) {
+            Files.delete(compacting);
+            Files.delete(segment.path);
+            segments.remove(segment.id, segment);
+            return;
+        }
+
+        Segment compacted = new Segment(segment.id, segment.path, map(compacting, Files.size(compacting)));
+
+        // anything that died since we looked just stays behind as dead space in the new segment
+        int position = 0;
+        for (int i = 0; i < moving.size(); i++) {
+            Location from = moving.get(i);
+            Location to = from.moveTo(compacted, position);
+
+            if (index.replace(keys.get(i), from, to)) {
+                compacted.live.addAndGet(to.size);
+            }
+            position += from.size;
+        }
+        compacted.written = position;
+
+        // readers still holding the old locations keep the old mapping alive until they are done with it
+        Files.move(compacting, segment.path, ATOMIC_MOVE, REPLACE_EXISTING);
+        segments.replace(segment.id, segment, compacted);
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        }
+        catch (IOException | RuntimeException e) {
+            logger.error("Unable to compact the journal in {}", directory, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
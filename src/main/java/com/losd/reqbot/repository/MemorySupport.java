@@ -0,0 +1,60 @@
+package com.losd.reqbot.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+final class MemorySupport {
+    private MemorySupport() {
+    }
+
+    static List<String> range(Iterable<String> values, long skip, long count) {
+        List<String> result = new ArrayList<>();
+        long index = 0;
+
+        for (String value : values) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (index++ >= skip) {
+                result.add(value);
+            }
+        }
+
+        return result;
+    }
+
+    // fetched holds up to one more than the page, which is how we know there is another page
+    static void streamPage(List<String> fetched, long cursor, int limit, PageConsumer page) {
+        if (fetched.size() > limit) {
+            page.nextCursor(cursor + limit);
+            fetched = fetched.subList(0, limit);
+        }
+
+        if (!fetched.isEmpty()) {
+            page.accept(fetched);
+        }
+    }
+}
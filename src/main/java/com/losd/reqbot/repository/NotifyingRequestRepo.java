@@ -0,0 +1,82 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.async.BucketWaiters;
+import com.losd.reqbot.model.Request;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// the stores that only live in this process wake the waiters themselves, redis does it through pub/sub
+public class NotifyingRequestRepo implements RequestRepo {
+    private final RequestRepo delegate;
+    private final BucketWaiters waiters;
+
+    public NotifyingRequestRepo(RequestRepo delegate, BucketWaiters waiters) {
+        this.delegate = delegate;
+        this.waiters = waiters;
+    }
+
+    @Override
+    public void save(Request request) {
+        delegate.save(request);
+        waiters.captured(request.getBucket());
+    }
+
+    @Override
+    public void saveAll(List<Request> requests) {
+        delegate.saveAll(requests);
+
+        Set<String> buckets = new LinkedHashSet<>();
+        requests.forEach(request -> buckets.add(request.getBucket()));
+        buckets.forEach(waiters::captured);
+    }
+
+    @Override
+    public List<Request> getByBucket(String bucket) {
+        return delegate.getByBucket(bucket);
+    }
+
+    @Override
+    public void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page) {
+        delegate.streamRawByBucket(bucket, cursor, limit, page);
+    }
+
+    @Override
+    public List<String> getRawByBucketAfter(String bucket, String after) {
+        return delegate.getRawByBucketAfter(bucket, after);
+    }
+
+    @Override
+    public List<String> getBuckets() {
+        return delegate.getBuckets();
+    }
+
+    @Override
+    public List<String> getBuckets(long cursor, long count) {
+        return delegate.getBuckets(cursor, count);
+    }
+}
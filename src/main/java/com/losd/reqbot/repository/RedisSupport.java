@@ -0,0 +1,148 @@
+package com.losd.reqbot.repository;
+
+import com.google.common.collect.Lists;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+final class RedisSupport {
+    static final int MULTI_GET_CHUNK_SIZE = 1000;
+    private static final int SCAN_COUNT = 1000;
+    private static final byte[] MATCH = "MATCH".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COUNT = "COUNT".getBytes(StandardCharsets.UTF_8);
+
+    private RedisSupport() {
+    }
+
+    // very big lists of keys are fetched as several pipelined MGETs so no single reply gets too large
+    @SuppressWarnings("unchecked")
+    static List<byte[]> multiGet(StringRedisTemplate template, List<String> keys, int chunkSize) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (keys.size() <= chunkSize) {
+            return template.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(raw(keys)));
+        }
+
+        List<Object> chunks = template.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            Lists.partition(keys, chunkSize).forEach(chunk -> connection.mGet(raw(chunk)));
+            return connection.closePipeline();
+        });
+
+        List<byte[]> values = new ArrayList<>(keys.size());
+        chunks.forEach(chunk -> values.addAll((List<byte[]>) chunk));
+
+        return values;
+    }
+
+    // one MGET at a time, each chunk is handed over before the next is read so only one is ever held in memory
+    static void multiGet(StringRedisTemplate template, List<String> keys, int chunkSize, Consumer<List<byte[]>> chunks) {
+        for (List<String> chunk : Lists.partition(keys, chunkSize)) {
+            List<byte[]> values = new ArrayList<>(chunk.size());
+
+            template.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(raw(chunk))).forEach(value -> {
+                // the key may have been removed since it was read from its list
+                if (value != null) {
+                    values.add(value);
+                }
+            });
+
+            if (!values.isEmpty()) {
+                chunks.accept(values);
+            }
+        }
+    }
+
+    // reads one more key than the page needs, so whether there is another page is known without a second round trip
+    static void streamPage(StringRedisTemplate template, String listKey, long cursor, int limit, long lastIndex,
+                           int chunkSize, LongConsumer nextCursor, Consumer<List<byte[]>> chunks) {
+        long end = cursor + limit;
+        if (lastIndex >= 0) {
+            end = Math.min(end, lastIndex);
+        }
+
+        List<String> keys = template.opsForList().range(listKey, cursor, end);
+
+        if (keys.size() > limit) {
+            nextCursor.accept(cursor + limit);
+            keys = keys.subList(0, limit);
+        }
+
+        multiGet(template, keys, chunkSize, chunks);
+    }
+
+    static byte[] get(StringRedisTemplate template, String key) {
+        return template.execute((RedisCallback<byte[]>) connection -> connection.get(raw(key)));
+    }
+
+    static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] raw(List<String> keys) {
+        byte[][] raw = new byte[keys.size()][];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = raw(keys.get(i));
+        }
+
+        return raw;
+    }
+
+    // walks the keyspace with SCAN, so unlike KEYS it never blocks the server for long
+    static List<String> scan(StringRedisTemplate template, String prefix) {
+        return template.execute((RedisCallback<List<String>>) connection -> scan(connection, prefix));
+    }
+
+    // RedisConnection.scan's cursor gives up after two empty pages in a row, which is normal when only a few keys
+    // match, so the cursor is driven by hand here
+    @SuppressWarnings("unchecked")
+    private static List<String> scan(RedisConnection connection, String prefix) {
+        List<String> result = new ArrayList<>();
+        byte[] match = (prefix + "*").getBytes(StandardCharsets.UTF_8);
+        byte[] count = String.valueOf(SCAN_COUNT).getBytes(StandardCharsets.UTF_8);
+        String cursor = "0";
+
+        do {
+            List<Object> reply = (List<Object>) connection.execute("SCAN", cursor.getBytes(StandardCharsets.UTF_8),
+                    MATCH, match, COUNT, count);
+
+            cursor = new String((byte[]) reply.get(0), StandardCharsets.UTF_8);
+            ((List<byte[]>) reply.get(1)).forEach(key ->
+                    result.add(new String(key, StandardCharsets.UTF_8).substring(prefix.length())));
+        } while (!"0".equals(cursor));
+
+        return result;
+    }
+}
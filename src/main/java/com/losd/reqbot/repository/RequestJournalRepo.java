@@ -0,0 +1,166 @@
+package com.losd.reqbot.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.losd.reqbot.config.JournalSettings;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class RequestJournalRepo implements RequestRepo, InitializingBean, DisposableBean {
+    static final String DIRECTORY = "requests";
+
+    @Autowired
+    RequestSettings settings;
+
+    @Autowired
+    JournalSettings journalSettings;
+
+    @Autowired
+    StorageCodec codec;
+
+    // the newest queueSize records of each bucket, so a read never has to scan the journal
+    private final ConcurrentMap<String, Ring<Journal.Location>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> bucketNames = new ConcurrentSkipListSet<>();
+
+    private Journal journal;
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        journal = Journal.open(Paths.get(journalSettings.getDirectory(), DIRECTORY), journalSettings, new BucketIndex());
+    }
+
+    @Override
+    public void destroy() {
+        journal.close();
+    }
+
+    @Override
+    public void save(Request request) {
+        journal.append(request.getBucket(), codec.encode(request));
+    }
+
+    @Override
+    public void saveAll(List<Request> requests) {
+        requests.forEach(this::save);
+    }
+
+    @Override
+    public List<Request> getByBucket(String bucket) {
+        Ring<Journal.Location> ring = buckets.get(bucket);
+        if (ring == null) {
+            return ImmutableList.of();
+        }
+
+        List<Request> result = new ArrayList<>();
+        ring.read(0, settings.getQueueSize()).forEach(location -> result.add(codec.decodeRequest(location.value())));
+
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page) {
+        Ring<Journal.Location> ring = buckets.get(bucket);
+        if (ring == null) {
+            return;
+        }
+
+        List<String> fetched = new ArrayList<>();
+        ring.read(cursor, limit + 1L).forEach(location -> fetched.add(codec.requestJson(location.value())));
+
+        MemorySupport.streamPage(fetched, cursor, limit, page);
+    }
+
+    @Override
+    public List<String> getRawByBucketAfter(String bucket, String after) {
+        Ring<Journal.Location> ring = buckets.get(bucket);
+        if (ring == null) {
+            return ImmutableList.of();
+        }
+
+        List<String> result = new ArrayList<>();
+        for (Journal.Location location : ring.read(0, settings.getQueueSize())) {
+            byte[] stored = location.value();
+            if (after != null && after.equals(codec.decodeRequest(stored).getUuid().toString())) {
+                break;
+            }
+            result.add(codec.requestJson(stored));
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<String> getBuckets() {
+        return ImmutableList.copyOf(bucketNames);
+    }
+
+    @Override
+    public List<String> getBuckets(long cursor, long count) {
+        return ImmutableList.copyOf(MemorySupport.range(bucketNames, cursor, count));
+    }
+
+    int segmentCount() {
+        return journal.segmentCount();
+    }
+
+    void compact() throws IOException {
+        journal.compact();
+    }
+
+    private class BucketIndex implements Journal.Index {
+        @Override
+        public Journal.Location add(String bucket, Journal.Location location) {
+            return buckets.computeIfAbsent(bucket, name -> {
+                bucketNames.add(name);
+                return new Ring<>(settings.getQueueSize());
+            }).add(location);
+        }
+
+        @Override
+        public boolean contains(String bucket, Journal.Location location) {
+            Ring<Journal.Location> ring = buckets.get(bucket);
+
+            return ring != null && ring.contains(location);
+        }
+
+        @Override
+        public boolean replace(String bucket, Journal.Location from, Journal.Location to) {
+            Ring<Journal.Location> ring = buckets.get(bucket);
+
+            return ring != null && ring.replace(from, to);
+        }
+    }
+}
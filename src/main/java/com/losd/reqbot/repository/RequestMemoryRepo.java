@@ -0,0 +1,115 @@
+package com.losd.reqbot.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class RequestMemoryRepo implements RequestRepo {
+    @Autowired
+    RequestSettings settings;
+
+    // stored as the same json as the redis repo so both hand back identical listings
+    Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private final JsonParser parser = new JsonParser();
+
+    private final ConcurrentMap<String, Ring<String>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> bucketNames = new ConcurrentSkipListSet<>();
+
+    @Override
+    public void save(Request request) {
+        Ring<String> ring = buckets.computeIfAbsent(request.getBucket(), bucket -> {
+            bucketNames.add(bucket);
+            return new Ring<>(settings.getQueueSize());
+        });
+
+        ring.add(gson.toJson(request));
+    }
+
+    @Override
+    public void saveAll(List<Request> requests) {
+        requests.forEach(this::save);
+    }
+
+    @Override
+    public List<Request> getByBucket(String bucket) {
+        List<Request> result = new ArrayList<>();
+        streamRawByBucket(bucket, 0, settings.getQueueSize(),
+                chunk -> chunk.forEach(json -> result.add(gson.fromJson(json, Request.class))));
+
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page) {
+        Ring<String> ring = buckets.get(bucket);
+        if (ring == null) {
+            return;
+        }
+
+        MemorySupport.streamPage(ring.read(cursor, limit + 1L), cursor, limit, page);
+    }
+
+    // the json is only parsed when it looks like it could be the one that was last seen
+    @Override
+    public List<String> getRawByBucketAfter(String bucket, String after) {
+        Ring<String> ring = buckets.get(bucket);
+        if (ring == null) {
+            return ImmutableList.of();
+        }
+
+        List<String> stored = ring.read(0, settings.getQueueSize());
+        String marker = after == null ? null : "\"uuid\":\"" + after + "\"";
+
+        for (int i = 0; i < stored.size(); i++) {
+            String json = stored.get(i);
+            if (marker != null && json.contains(marker) && after.equals(parser.parse(json).getAsJsonObject().get("uuid").getAsString())) {
+                return stored.subList(0, i);
+            }
+        }
+
+        return stored;
+    }
+
+    @Override
+    public List<String> getBuckets() {
+        return ImmutableList.copyOf(bucketNames);
+    }
+
+    @Override
+    public List<String> getBuckets(long cursor, long count) {
+        return ImmutableList.copyOf(MemorySupport.range(bucketNames, cursor, count));
+    }
+}
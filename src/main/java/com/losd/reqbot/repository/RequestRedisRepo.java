@@ -1,17 +1,19 @@
 package com.losd.reqbot.repository;
 
 import com.google.common.collect.ImmutableList;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.losd.reqbot.config.RequestSettings;
 import com.losd.reqbot.model.Request;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.data.redis.core.RedisOperations;
-import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The MIT License (MIT)
@@ -36,66 +38,129 @@ import java.util.*;
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-public class RequestRedisRepo implements RequestRepo {
+public class RequestRedisRepo implements RequestRepo, InitializingBean {
     private static final String BUCKET_KEY_PREFIX = "bucket:";
     public static final String REQUEST_KEY_PREFIX = "request:";
 
+    // the save script publishes the name of each bucket it writes to here, so every node can wake its waiters
+    public static final String CAPTURED_CHANNEL = "reqbot:captured";
+
+    // every bucket name, scored 0 so the sorted set keeps them in name order
+    public static final String BUCKET_INDEX_KEY = "index:buckets";
+
     @Autowired
     RequestSettings settings;
 
     @Autowired
     StringRedisTemplate template;
 
-    Gson gson = new GsonBuilder().serializeNulls().create();
+    @Autowired
+    StorageCodec codec;
+
+    int multiGetChunkSize = RedisSupport.MULTI_GET_CHUNK_SIZE;
+
+    private static final DefaultRedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        SAVE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/save_requests.lua")));
+        SAVE_SCRIPT.setResultType(Long.class);
+    }
 
     @Override
     public void save(Request request) {
-        int queueSize = settings.getQueueSize();
-
-        List<Object> txResults = template.execute(new SessionCallback<List<Object>>() {
-            @Override
-            public List<Object> execute(RedisOperations operations) throws DataAccessException {
-                operations.multi();
-
-                operations.opsForList().index(getBucketKey(request.getBucket()), queueSize - 1);
-                operations.opsForList().leftPush(getBucketKey(request.getBucket()), getRequestKey(request));
-                operations.opsForValue().set(getRequestKey(request), gson.toJson(request));
-                operations.opsForList().trim(getBucketKey(request.getBucket()), 0, queueSize - 1);
-                return operations.exec();
-            }
-        });
-
-        if (txResults.get(0) != null) {
-            template.delete((String) txResults.get(0));
-        }
+        saveAll(Collections.singletonList(request));
     }
 
+    // one EVALSHA per batch: the push, the trim and the delete of whatever falls off the end of a bucket
+    // happen together on the server, so concurrent writers can't leave orphaned request keys behind.
+    // the buckets are published from there too, once they are written and without another round trip
     @Override
-    public List<Request> getByBucket(String bucket) {
-        List<Request> result;
-        int queueSize = settings.getQueueSize();
+    public void saveAll(List<Request> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
 
-        result = new ArrayList<>();
+        List<String> keys = new ArrayList<>(1 + requests.size() * 2);
+        List<byte[]> args = new ArrayList<>(2 + requests.size() * 2);
 
-        List<String> requests = template.opsForList().range(getBucketKey(bucket), 0, queueSize - 1);
+        keys.add(BUCKET_INDEX_KEY);
+        args.add(RedisSupport.raw(String.valueOf(settings.getQueueSize())));
+        args.add(RedisSupport.raw(CAPTURED_CHANNEL));
 
         requests.forEach(request -> {
-            String body = template.opsForValue().get(request);
-            result.add(gson.fromJson(body, Request.class));
+            keys.add(getBucketKey(request.getBucket()));
+            keys.add(getRequestKey(request));
+            args.add(RedisSupport.raw(request.getBucket()));
+            args.add(codec.encode(request));
         });
 
+        // no serializers, so the encoded requests go to the script exactly as they are
+        template.execute(SAVE_SCRIPT, null, null, keys, args.toArray());
+    }
+
+    @Override
+    public List<Request> getByBucket(String bucket) {
+        List<Request> result = new ArrayList<>();
+        RedisSupport.streamPage(template, getBucketKey(bucket), 0, settings.getQueueSize(), settings.getQueueSize() - 1,
+                multiGetChunkSize, cursor -> {
+                }, chunk -> chunk.forEach(stored -> result.add(codec.decodeRequest(stored))));
+
         return ImmutableList.copyOf(result);
     }
 
+    // the keys of a page are read in one go so it is a consistent snapshot, the requests a chunk at a time
+    @Override
+    public void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page) {
+        RedisSupport.streamPage(template, getBucketKey(bucket), cursor, limit, settings.getQueueSize() - 1,
+                multiGetChunkSize, page::nextCursor, chunk -> {
+                    List<String> json = new ArrayList<>(chunk.size());
+                    chunk.forEach(stored -> json.add(codec.requestJson(stored)));
+                    page.accept(json);
+                });
+    }
+
+    // only the keys of the bucket are read to find where the last one seen is, then just the newer requests
+    @Override
+    public List<String> getRawByBucketAfter(String bucket, String after) {
+        List<String> keys = template.opsForList().range(getBucketKey(bucket), 0, settings.getQueueSize() - 1);
+
+        if (after != null) {
+            int seen = keys.indexOf(REQUEST_KEY_PREFIX + after);
+            if (seen >= 0) {
+                keys = keys.subList(0, seen);
+            }
+        }
+
+        List<String> result = new ArrayList<>(keys.size());
+        RedisSupport.multiGet(template, keys, multiGetChunkSize, chunk -> chunk.forEach(stored -> result.add(codec.requestJson(stored))));
+
+        return result;
+    }
+
     @Override
     public List<String> getBuckets() {
-        Set<String> keys = template.keys(BUCKET_KEY_PREFIX + "*");
-        List<String> result = new LinkedList<String>();
+        return ImmutableList.copyOf(template.opsForZSet().range(BUCKET_INDEX_KEY, 0, -1));
+    }
 
-        keys.forEach((key) -> result.add(key.substring(BUCKET_KEY_PREFIX.length())));
+    @Override
+    public List<String> getBuckets(long cursor, long count) {
+        return ImmutableList.copyOf(template.opsForZSet().range(BUCKET_INDEX_KEY, cursor, cursor + count - 1));
+    }
 
-        Collections.sort(result);
-        return ImmutableList.copyOf(result);
+    // buckets written before the index existed are found with an incremental SCAN, once
+    @Override
+    public void afterPropertiesSet() {
+        if (template.hasKey(BUCKET_INDEX_KEY)) {
+            return;
+        }
+
+        List<String> buckets = RedisSupport.scan(template, BUCKET_KEY_PREFIX);
+
+        template.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] index = RedisSupport.raw(BUCKET_INDEX_KEY);
+            buckets.forEach(bucket -> connection.zAdd(index, 0, RedisSupport.raw(bucket)));
+            return null;
+        });
     }
 
     static String getRequestKey(Request request) {
@@ -29,6 +29,10 @@ import java.util.List;
  */
 public interface RequestRepo {
     void save(Request request);
+    void saveAll(List<Request> requests);
     List<Request> getByBucket(String bucket);
+    void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page);
+    List<String> getRawByBucketAfter(String bucket, String after);
     List<String> getBuckets();
+    List<String> getBuckets(long cursor, long count);
 }
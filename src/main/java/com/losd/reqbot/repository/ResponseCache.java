@@ -0,0 +1,156 @@
+package com.losd.reqbot.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.losd.reqbot.model.Response;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ResponseCache implements PublicMetrics {
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // reads don't lock, guava queues them up and reorders the entries on the next write. there is only one segment
+    // so that the byte limit is for the whole cache rather than split four ways, writes only happen on a miss or a
+    // save so they don't queue up behind each other. guava can't bound both the count and the weight, so every entry
+    // weighs at least its share of the bytes, which keeps the count within maxEntries too
+    private final Cache<String, Entry> entries;
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResponseCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        long share = maxEntries <= 0 ? maxBytes : maxBytes / maxEntries;
+        this.entries = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(Math.max(maxBytes, 0))
+                .<String, Entry>weigher((uuid, entry) -> (int) Math.min(Math.max(entry.weight, share), Integer.MAX_VALUE))
+                .<String, Entry>removalListener(removal -> {
+                    bytes.addAndGet(-removal.getValue().weight);
+                    if (removal.getCause() == RemovalCause.SIZE) {
+                        evictions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    public Response get(String uuid) {
+        Entry entry = entries.getIfPresent(uuid);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.response;
+    }
+
+    public void put(String uuid, Response response) {
+        long weight = weigh(uuid, response);
+
+        if (weight > maxBytes || maxEntries <= 0) {
+            return;
+        }
+
+        // added before the put so that the listener taking off anything it replaces or evicts can't go below zero
+        bytes.addAndGet(weight);
+        entries.put(uuid, new Entry(response, weight));
+    }
+
+    public int size() {
+        return (int) entries.size();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("reqbot.response.cache.hits", hits()),
+                new Metric<>("reqbot.response.cache.misses", misses()),
+                new Metric<>("reqbot.response.cache.evictions", evictions()),
+                new Metric<>("reqbot.response.cache.entries", size()),
+                new Metric<>("reqbot.response.cache.bytes", bytes()));
+    }
+
+    // a rough estimate of the heap used, strings are counted at two bytes a character and the body gets another
+    // byte a character for the encoded copy kept once it has been served
+    static long weigh(String uuid, Response response) {
+        long chars = uuid.length();
+
+        if (response.getBody() != null) {
+            chars += response.getBody().length() * 3 / 2;
+        }
+
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            chars += header.getKey().length() + (header.getValue() == null ? 0 : header.getValue().length());
+        }
+
+        for (String tag : response.getTags()) {
+            chars += tag.length();
+        }
+
+        return ENTRY_OVERHEAD + chars * 2;
+    }
+
+    private static class Entry {
+        final Response response;
+        final long weight;
+
+        Entry(Response response, long weight) {
+            this.response = response;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.losd.reqbot.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.losd.reqbot.config.JournalSettings;
+import com.losd.reqbot.model.Response;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ResponseJournalRepo implements ResponseRepo, InitializingBean, DisposableBean {
+    static final String DIRECTORY = "responses";
+
+    @Autowired
+    JournalSettings journalSettings;
+
+    @Autowired
+    StorageCodec codec;
+
+    private final ConcurrentMap<String, Journal.Location> responses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Deque<String>> tags = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> tagNames = new ConcurrentSkipListSet<>();
+
+    private final UuidIndex index = new UuidIndex();
+    private Journal journal;
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        journal = Journal.open(Paths.get(journalSettings.getDirectory(), DIRECTORY), journalSettings, index);
+    }
+
+    @Override
+    public void destroy() {
+        journal.close();
+    }
+
+    @Override
+    public Response get(String uuid) {
+        Journal.Location location = responses.get(uuid);
+
+        return location == null ? null : codec.decodeResponse(location.value());
+    }
+
+    @Override
+    public void save(Response response) {
+        byte[] stored = codec.encode(response);
+
+        // the journal adds to the index while it holds its own lock, taking it first makes sure the index is
+        // handed this response and not one being saved on another thread
+        synchronized (journal) {
+            index.appending = response;
+            try {
+                journal.append(response.getUuid().toString(), stored);
+            }
+            finally {
+                index.appending = null;
+            }
+        }
+    }
+
+    @Override
+    public List<Response> getAll() {
+        List<Response> result = new ArrayList<>(responses.size());
+        responses.values().forEach(location -> result.add(codec.decodeResponse(location.value())));
+
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public List<Response> getByTag(String tag) {
+        Deque<String> uuids = tags.get(tag);
+        if (uuids == null) {
+            return ImmutableList.of();
+        }
+
+        List<Response> result = new ArrayList<>();
+        uuids.forEach(uuid -> {
+            Response response = get(uuid);
+            if (response != null) {
+                result.add(response);
+            }
+        });
+
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public void streamRawByTag(String tag, long cursor, int limit, PageConsumer page) {
+        Deque<String> uuids = tags.get(tag);
+        if (uuids == null) {
+            return;
+        }
+
+        List<String> result = new ArrayList<>();
+        MemorySupport.range(uuids, cursor, limit + 1L).forEach(uuid -> {
+            Journal.Location location = responses.get(uuid);
+            if (location != null) {
+                result.add(codec.responseJson(location.value()));
+            }
+        });
+
+        MemorySupport.streamPage(result, cursor, limit, page);
+    }
+
+    @Override
+    public List<String> getTags() {
+        return ImmutableList.copyOf(tagNames);
+    }
+
+    @Override
+    public List<String> getTags(long cursor, long count) {
+        return ImmutableList.copyOf(MemorySupport.range(tagNames, cursor, count));
+    }
+
+    // newest first, the same way round as the redis lists
+    private void tag(String tag, String uuid) {
+        tags.computeIfAbsent(tag, name -> {
+            tagNames.add(name);
+            return new ConcurrentLinkedDeque<>();
+        }).addFirst(uuid);
+    }
+
+    private class UuidIndex implements Journal.Index {
+        // the response being saved, so its tags don't have to be decoded again. only replaying the journal on
+        // startup reads them back out of the record
+        private Response appending;
+
+        @Override
+        public Journal.Location add(String uuid, Journal.Location location) {
+            Journal.Location previous = responses.put(uuid, location);
+
+            if (previous == null) {
+                Response response = appending != null ? appending : codec.decodeResponse(location.value());
+
+                if (null == response.getTags() || response.getTags().size() == 0) {
+                    tag("none", uuid);
+                } else {
+                    response.getTags().forEach(tag -> tag(tag, uuid));
+                }
+            }
+
+            return previous;
+        }
+
+        @Override
+        public boolean contains(String uuid, Journal.Location location) {
+            return location.equals(responses.get(uuid));
+        }
+
+        @Override
+        public boolean replace(String uuid, Journal.Location from, Journal.Location to) {
+            return responses.replace(uuid, from, to);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.losd.reqbot.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.losd.reqbot.model.Response;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ResponseMemoryRepo implements ResponseRepo {
+    private static final class Stored {
+        final Response response;
+        final String json;
+
+        Stored(Response response, String json) {
+            this.response = response;
+            this.json = json;
+        }
+    }
+
+    // stored as the same json as the redis repo so both hand back identical listings
+    Gson gson = new GsonBuilder().serializeNulls().disableHtmlEscaping().create();
+
+    private final ConcurrentMap<String, Stored> responses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Deque<String>> tags = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> tagNames = new ConcurrentSkipListSet<>();
+
+    @Override
+    public Response get(String uuid) {
+        Stored stored = responses.get(uuid);
+
+        return stored == null ? null : stored.response;
+    }
+
+    @Override
+    public void save(Response response) {
+        String uuid = response.getUuid().toString();
+        responses.put(uuid, new Stored(response, gson.toJson(response, Response.class)));
+
+        if (null == response.getTags() || response.getTags().size() == 0) {
+            tag("none", uuid);
+        } else {
+            response.getTags().forEach(tag -> tag(tag, uuid));
+        }
+    }
+
+    @Override
+    public List<Response> getAll() {
+        List<Response> result = new ArrayList<>(responses.size());
+        responses.values().forEach(stored -> result.add(stored.response));
+
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public List<Response> getByTag(String tag) {
+        Deque<String> uuids = tags.get(tag);
+        if (uuids == null) {
+            return ImmutableList.of();
+        }
+
+        List<Response> result = new ArrayList<>();
+        uuids.forEach(uuid -> {
+            Stored stored = responses.get(uuid);
+            if (stored != null) {
+                result.add(stored.response);
+            }
+        });
+
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public void streamRawByTag(String tag, long cursor, int limit, PageConsumer page) {
+        Deque<String> uuids = tags.get(tag);
+        if (uuids == null) {
+            return;
+        }
+
+        List<String> result = new ArrayList<>();
+        MemorySupport.range(uuids, cursor, limit + 1L).forEach(uuid -> {
+            Stored stored = responses.get(uuid);
+            if (stored != null) {
+                result.add(stored.json);
+            }
+        });
+
+        MemorySupport.streamPage(result, cursor, limit, page);
+    }
+
+    @Override
+    public List<String> getTags() {
+        return ImmutableList.copyOf(tagNames);
+    }
+
+    @Override
+    public List<String> getTags(long cursor, long count) {
+        return ImmutableList.copyOf(MemorySupport.range(tagNames, cursor, count));
+    }
+
+    // newest first, the same way round as the redis lists
+    private void tag(String tag, String uuid) {
+        tags.computeIfAbsent(tag, name -> {
+            tagNames.add(name);
+            return new ConcurrentLinkedDeque<>();
+        }).addFirst(uuid);
+    }
+}
@@ -1,19 +1,17 @@
 package com.losd.reqbot.repository;
 
 import com.google.common.collect.ImmutableList;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.losd.reqbot.jfr.Flight;
+import com.losd.reqbot.jfr.ResponseLookupEvent;
 import com.losd.reqbot.model.Response;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.data.redis.core.RedisOperations;
-import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * The MIT License (MIT)
@@ -38,77 +36,114 @@ import java.util.Set;
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-public class ResponseRedisRepo implements ResponseRepo {
+public class ResponseRedisRepo implements ResponseRepo, InitializingBean {
     public static final String RESPONSE_KEY_PREFIX = "response:";
     public static final String TAG_PREFIX = "tag:";
 
+    // every tag name, scored 0 so the sorted set keeps them in name order
+    public static final String TAG_INDEX_KEY = "index:tags";
+    public static final String RESPONSE_INDEX_KEY = "index:responses";
+
     @Autowired
     StringRedisTemplate template;
 
-    Gson gson = new GsonBuilder().serializeNulls().create();
+    @Autowired
+    StorageCodec codec;
 
     @Override
     public Response get(String uuid) {
-        String response = template.opsForValue().get(RESPONSE_KEY_PREFIX + uuid);
+        ResponseLookupEvent event = Flight.responseLookup();
+        byte[] stored = RedisSupport.get(template, RESPONSE_KEY_PREFIX + uuid);
+        Response response = stored == null ? null : codec.decodeResponse(stored);
+
+        if (event != null) {
+            event.finish(uuid, ResponseLookupEvent.REDIS, response != null);
+        }
 
-        return gson.fromJson(response, Response.class);
+        return response;
     }
 
     @Override
     public void save(Response response) {
-        String key = RESPONSE_KEY_PREFIX + response.getUuid().toString();
-
-        template.execute(new SessionCallback<List<Object>>() {
-            @Override
-            public List<Object> execute(RedisOperations operations) throws DataAccessException {
-                operations.multi();
-
-                if (null == response.getTags() || response.getTags().size() == 0) {
-                    operations.opsForList().leftPush(TAG_PREFIX + "none", key);
-                } else {
-                    response.getTags().forEach((tag) -> operations.opsForList().leftPush(TAG_PREFIX + tag, key));
-                }
+        byte[] key = RedisSupport.raw(RESPONSE_KEY_PREFIX + response.getUuid().toString());
+        byte[] stored = codec.encode(response);
+
+        template.execute((RedisCallback<List<Object>>) connection -> {
+            connection.multi();
+
+            if (null == response.getTags() || response.getTags().size() == 0) {
+                connection.lPush(RedisSupport.raw(TAG_PREFIX + "none"), key);
+                connection.zAdd(RedisSupport.raw(TAG_INDEX_KEY), 0, RedisSupport.raw("none"));
+            } else {
+                response.getTags().forEach((tag) -> {
+                    connection.lPush(RedisSupport.raw(TAG_PREFIX + tag), key);
+                    connection.zAdd(RedisSupport.raw(TAG_INDEX_KEY), 0, RedisSupport.raw(tag));
+                });
+            }
 
-                operations.opsForValue().set(key, gson.toJson(response, Response.class));
+            connection.set(key, stored);
+            connection.sAdd(RedisSupport.raw(RESPONSE_INDEX_KEY), key);
 
-                return operations.exec();
-            }
+            return connection.exec();
         });
     }
 
     @Override
     public List<Response> getAll() {
-        Set<String> keys = template.keys(RESPONSE_KEY_PREFIX + "*");
-        List<Response> result = new LinkedList<>();
+        List<String> keys = new ArrayList<>(template.opsForSet().members(RESPONSE_INDEX_KEY));
+        List<Response> result = new ArrayList<>(keys.size());
+
+        RedisSupport.multiGet(template, keys, RedisSupport.MULTI_GET_CHUNK_SIZE).forEach(response -> {
+            if (response != null) {
+                result.add(codec.decodeResponse(response));
+            }
+        });
 
-        keys.forEach((key) -> result.add(get(key.substring(RESPONSE_KEY_PREFIX.length()))));
         return ImmutableList.copyOf(result);
     }
 
     @Override
     public List<Response> getByTag(String tag) {
-        String tagKey = TAG_PREFIX + tag;
-        long length = template.opsForList().size(tagKey);
-
-        List<String> keys = template.opsForList().range(tagKey, 0, length);
-
-        List<Response> result = new LinkedList<>();
-
-        keys.forEach((key) -> {
-            String response = template.opsForValue().get(key);
-            result.add(gson.fromJson(response, Response.class));
-        });
+        List<Response> result = new ArrayList<>();
+        RedisSupport.streamPage(template, TAG_PREFIX + tag, 0, Integer.MAX_VALUE, -1, RedisSupport.MULTI_GET_CHUNK_SIZE,
+                cursor -> {
+                }, chunk -> chunk.forEach(stored -> result.add(codec.decodeResponse(stored))));
 
         return ImmutableList.copyOf(result);
     }
 
+    @Override
+    public void streamRawByTag(String tag, long cursor, int limit, PageConsumer page) {
+        RedisSupport.streamPage(template, TAG_PREFIX + tag, cursor, limit, -1, RedisSupport.MULTI_GET_CHUNK_SIZE,
+                page::nextCursor, chunk -> {
+                    List<String> json = new ArrayList<>(chunk.size());
+                    chunk.forEach(stored -> json.add(codec.responseJson(stored)));
+                    page.accept(json);
+                });
+    }
+
     @Override
     public List<String> getTags() {
-        Set<String> tags = template.keys(TAG_PREFIX + "*");
-        List<String> result = new LinkedList<>();
+        return ImmutableList.copyOf(template.opsForZSet().range(TAG_INDEX_KEY, 0, -1));
+    }
 
-        tags.forEach((tag) -> result.add(tag.substring(TAG_PREFIX.length())));
-        Collections.sort(result);
-        return ImmutableList.copyOf(result);
+    @Override
+    public List<String> getTags(long cursor, long count) {
+        return ImmutableList.copyOf(template.opsForZSet().range(TAG_INDEX_KEY, cursor, cursor + count - 1));
+    }
+
+    // tags and responses written before the indexes existed are found with an incremental SCAN, once
+    @Override
+    public void afterPropertiesSet() {
+        List<String> tags = template.hasKey(TAG_INDEX_KEY) ? Collections.emptyList() : RedisSupport.scan(template, TAG_PREFIX);
+        List<String> responses = template.hasKey(RESPONSE_INDEX_KEY) ? Collections.emptyList() : RedisSupport.scan(template, RESPONSE_KEY_PREFIX);
+
+        template.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] tagIndex = RedisSupport.raw(TAG_INDEX_KEY);
+            byte[] responseIndex = RedisSupport.raw(RESPONSE_INDEX_KEY);
+            tags.forEach(tag -> connection.zAdd(tagIndex, 0, RedisSupport.raw(tag)));
+            responses.forEach(uuid -> connection.sAdd(responseIndex, RedisSupport.raw(RESPONSE_KEY_PREFIX + uuid)));
+            return null;
+        });
     }
 }
\ No newline at end of file
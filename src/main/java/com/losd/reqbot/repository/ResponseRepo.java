@@ -32,5 +32,7 @@ public interface ResponseRepo {
     void save(Response response);
     List<Response> getAll();
     List<Response> getByTag(String tag);
+    void streamRawByTag(String tag, long cursor, int limit, PageConsumer page);
     List<String> getTags();
+    List<String> getTags(long cursor, long count);
 }
@@ -0,0 +1,107 @@
+package com.losd.reqbot.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+final class Ring<T> {
+    private static final class Slot<T> {
+        final long sequence;
+        final T value;
+
+        Slot(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    private final int capacity;
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final AtomicLong next = new AtomicLong();
+
+    Ring(int capacity) {
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    // writers never wait for each other, each claims a sequence number and only ever replaces an older slot.
+    // hands back whatever fell out of the ring, which is the new value itself if it was lapped before it landed
+    T add(T value) {
+        long sequence = next.getAndIncrement();
+        int index = (int) (sequence % capacity);
+        Slot<T> slot = new Slot<>(sequence, value);
+
+        Slot<T> current;
+        do {
+            current = slots.get(index);
+            if (current != null && current.sequence > sequence) {
+                return value;
+            }
+        } while (!slots.compareAndSet(index, current, slot));
+
+        return current == null ? null : current.value;
+    }
+
+    // swaps a value in place, keeping its position, as long as it is still in the ring
+    boolean replace(T from, T to) {
+        for (int index = 0; index < capacity; index++) {
+            Slot<T> current = slots.get(index);
+            if (current != null && current.value.equals(from)) {
+                return slots.compareAndSet(index, current, new Slot<>(current.sequence, to));
+            }
+        }
+
+        return false;
+    }
+
+    boolean contains(T value) {
+        for (int index = 0; index < capacity; index++) {
+            Slot<T> current = slots.get(index);
+            if (current != null && current.value.equals(value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // newest first, skipping slots that have been claimed but not written yet or have been lapped since
+    List<T> read(long skip, long count) {
+        long newest = next.get() - 1;
+        long oldest = Math.max(0, newest - capacity + 1);
+        List<T> result = new ArrayList<>((int) Math.min(count, capacity));
+
+        for (long sequence = newest - skip; sequence >= oldest && result.size() < count; sequence--) {
+            Slot<T> slot = slots.get((int) (sequence % capacity));
+            if (slot != null && slot.sequence == sequence) {
+                result.add(slot.value);
+            }
+        }
+
+        return result;
+    }
+}
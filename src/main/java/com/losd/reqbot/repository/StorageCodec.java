@@ -0,0 +1,544 @@
+package com.losd.reqbot.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.losd.reqbot.jfr.Flight;
+import com.losd.reqbot.jfr.SerializationEvent;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public final class StorageCodec implements PublicMetrics {
+    public enum Format {
+        JSON, BINARY
+    }
+
+    // json always starts with '{', so a leading zero byte marks a binary entry and the byte after it is its version
+    static final byte BINARY_MARKER = 0;
+    static final byte BINARY_VERSION = 1;
+
+    // every body has one of these in front of it
+    static final byte BODY_PLAIN = 0;
+    static final byte BODY_DEFLATED = 1;
+
+    // zlib keeps a few hundred kb of native state per stream, so each thread reuses its own
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    // nulls are left out of a request and kept in a response, the same as the api renders them
+    private final Gson requestGson = new GsonBuilder().disableHtmlEscaping().create();
+    private final Gson responseGson = new GsonBuilder().serializeNulls().disableHtmlEscaping().create();
+
+    private final Format format;
+    private final int compressAbove;
+
+    private final AtomicLong compressAttempts = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong compressedFrom = new AtomicLong();
+    private final AtomicLong compressedTo = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong decompressed = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    public StorageCodec(Format format) {
+        this(format, 0);
+    }
+
+    // bodies longer than compressAbove bytes are deflated, zero leaves every body as it is
+    public StorageCodec(Format format, int compressAbove) {
+        this.format = format;
+        this.compressAbove = compressAbove;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public byte[] encode(Request request) {
+        SerializationEvent event = Flight.serialization();
+        byte[] stored = write(request);
+
+        if (event != null) {
+            event.finish(SerializationEvent.ENCODE, SerializationEvent.REQUEST, isBinary(stored), stored.length);
+        }
+
+        return stored;
+    }
+
+    public byte[] encode(Response response) {
+        SerializationEvent event = Flight.serialization();
+        byte[] stored = write(response);
+
+        if (event != null) {
+            event.finish(SerializationEvent.ENCODE, SerializationEvent.RESPONSE, isBinary(stored), stored.length);
+        }
+
+        return stored;
+    }
+
+    public Request decodeRequest(byte[] stored) {
+        SerializationEvent event = Flight.serialization();
+        Request request = readRequest(stored);
+
+        if (event != null) {
+            event.finish(SerializationEvent.DECODE, SerializationEvent.REQUEST, isBinary(stored), stored.length);
+        }
+
+        return request;
+    }
+
+    public Response decodeResponse(byte[] stored) {
+        SerializationEvent event = Flight.serialization();
+        Response response = readResponse(stored);
+
+        if (event != null) {
+            event.finish(SerializationEvent.DECODE, SerializationEvent.RESPONSE, isBinary(stored), stored.length);
+        }
+
+        return response;
+    }
+
+    // what the api hands back, json entries go straight through without being parsed
+    public String requestJson(byte[] stored) {
+        SerializationEvent event = Flight.serialization();
+        boolean binary = isBinary(stored);
+        String json = binary ? requestGson.toJson(readRequest(stored)) : new String(stored, StandardCharsets.UTF_8);
+
+        if (event != null) {
+            event.finish(SerializationEvent.JSON, SerializationEvent.REQUEST, binary, stored.length);
+        }
+
+        return json;
+    }
+
+    public String responseJson(byte[] stored) {
+        SerializationEvent event = Flight.serialization();
+        boolean binary = isBinary(stored);
+        String json = binary ? responseGson.toJson(readResponse(stored), Response.class)
+                : new String(stored, StandardCharsets.UTF_8);
+
+        if (event != null) {
+            event.finish(SerializationEvent.JSON, SerializationEvent.RESPONSE, binary, stored.length);
+        }
+
+        return json;
+    }
+
+    // an entry with a body worth compressing is written as binary whatever the format, json has nowhere to flag it
+    private byte[] write(Request request) {
+        Deflated body = compress(request.getBody());
+
+        if (format == Format.JSON && body == null) {
+            return requestGson.toJson(request).getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer out = new Writer();
+        out.string(request.getBucket());
+        out.string(request.getMethod());
+        out.string(request.getPath());
+        out.int64(request.getTimestampMillis());
+        out.uuid(request.getUuid());
+        out.map(request.getHeaders());
+        out.map(request.getQueryParameters());
+        out.body(request.getBody(), body);
+        out.string(request.getBodyEncoding());
+        out.int64(request.getBodyLength() == null ? -1 : request.getBodyLength());
+        out.string(request.getBodySha256());
+
+        return out.toByteArray();
+    }
+
+    private byte[] write(Response response) {
+        Deflated body = compress(response.getBody());
+
+        if (format == Format.JSON && body == null) {
+            return responseGson.toJson(response, Response.class).getBytes(StandardCharsets.UTF_8);
+        }
+
+        Writer out = new Writer();
+        out.uuid(response.getUuid());
+        out.map(response.getHeaders());
+        out.list(response.getTags());
+        out.body(response.getBody(), body);
+
+        return out.toByteArray();
+    }
+
+    // entries are read in whichever format they were written in, so the format can be changed on a running store
+    private Request readRequest(byte[] stored) {
+        if (!isBinary(stored)) {
+            return requestGson.fromJson(new String(stored, StandardCharsets.UTF_8), Request.class);
+        }
+
+        Reader in = new Reader(stored);
+        Request.Builder builder = new Request.Builder()
+                .bucket(in.string())
+                .method(in.string())
+                .path(in.string())
+                .timestamp(in.int64())
+                .uuid(in.uuid());
+
+        Map<String, String> headers = in.map();
+        if (headers != null) {
+            builder.headers(headers);
+        }
+
+        Map<String, String> queryParameters = in.map();
+        if (queryParameters != null) {
+            builder.queryParameters(queryParameters);
+        }
+
+        builder.body(in.body())
+                .bodyEncoding(in.string());
+
+        long bodyLength = in.int64();
+        String bodySha256 = in.string();
+        if (bodyLength >= 0) {
+            builder.truncated(bodyLength, bodySha256);
+        }
+
+        return builder.build();
+    }
+
+    private Response readResponse(byte[] stored) {
+        if (!isBinary(stored)) {
+            return responseGson.fromJson(new String(stored, StandardCharsets.UTF_8), Response.class);
+        }
+
+        Reader in = new Reader(stored);
+        Response.Builder builder = new Response.Builder().uuid(in.uuid());
+
+        Map<String, String> headers = in.map();
+        if (headers != null) {
+            builder.headers(headers);
+        }
+
+        return builder.tags(in.list()).body(in.body()).build();
+    }
+
+    static boolean isBinary(byte[] stored) {
+        return stored.length > 0 && stored[0] == BINARY_MARKER;
+    }
+
+    public long compressed() {
+        return compressed.get();
+    }
+
+    public long decompressed() {
+        return decompressed.get();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long from = compressedFrom.get();
+        long to = compressedTo.get();
+
+        return Arrays.asList(
+                new Metric<>("reqbot.storage.compression.bodies", compressed()),
+                new Metric<>("reqbot.storage.compression.ratio", to == 0 ? 0.0 : (double) from / to),
+                new Metric<>("reqbot.storage.compression.compressMicros", meanMicros(compressNanos.get(), compressAttempts.get())),
+                new Metric<>("reqbot.storage.compression.decompressMicros", meanMicros(decompressNanos.get(), decompressed())));
+    }
+
+    private static double meanMicros(long nanos, long count) {
+        return count == 0 ? 0.0 : nanos / 1000.0 / count;
+    }
+
+    // the deflated body, or null if it is too small to bother with or does not get any smaller
+    private Deflated compress(String body) {
+        // a char is at most three bytes of utf-8, so short strings can be skipped without encoding them
+        if (compressAbove <= 0 || body == null || body.length() <= compressAbove / 3) {
+            return null;
+        }
+
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        if (raw.length <= compressAbove) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+
+        byte[] out = new byte[raw.length];
+        int length = 0;
+        while (!deflater.finished() && length < out.length) {
+            length += deflater.deflate(out, length, out.length - length);
+        }
+
+        compressNanos.addAndGet(System.nanoTime() - start);
+        compressAttempts.incrementAndGet();
+
+        if (!deflater.finished() || length >= raw.length) {
+            return null;
+        }
+
+        compressedFrom.addAndGet(raw.length);
+        compressedTo.addAndGet(length);
+        compressed.incrementAndGet();
+
+        return new Deflated(out, length, raw.length);
+    }
+
+    private String decompress(byte[] buffer, int offset, int length, int rawLength) {
+        long start = System.nanoTime();
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(buffer, offset, length);
+
+        byte[] raw = new byte[rawLength];
+        int read = 0;
+        try {
+            while (read < rawLength) {
+                int inflated = inflater.inflate(raw, read, rawLength - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Stored body is shorter than its recorded length");
+                }
+                read += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Stored body is not valid deflate data", e);
+        }
+
+        decompressNanos.addAndGet(System.nanoTime() - start);
+        decompressed.incrementAndGet();
+
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    // the deflater writes into a buffer the size of the raw body, only the start of it is used
+    private static final class Deflated {
+        final byte[] bytes;
+        final int length;
+        final int rawLength;
+
+        Deflated(byte[] bytes, int length, int rawLength) {
+            this.bytes = bytes;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+    }
+
+    // strings, maps and lists are prefixed with their length plus one as a varint, so zero can stand for null
+    private static final class Writer {
+        private byte[] buffer = new byte[256];
+        private int position = 0;
+
+        Writer() {
+            buffer[position++] = BINARY_MARKER;
+            buffer[position++] = BINARY_VERSION;
+        }
+
+        void uuid(UUID uuid) {
+            int64(uuid.getMostSignificantBits());
+            int64(uuid.getLeastSignificantBits());
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void map(Map<String, String> map) {
+            if (map == null) {
+                varint(0);
+                return;
+            }
+
+            varint(map.size() + 1);
+            map.forEach((key, value) -> {
+                string(key);
+                string(value);
+            });
+        }
+
+        void list(List<String> list) {
+            if (list == null) {
+                varint(0);
+                return;
+            }
+
+            varint(list.size() + 1);
+            list.forEach(this::string);
+        }
+
+        void body(String body, Deflated deflated) {
+            ensure(1);
+            if (deflated == null) {
+                buffer[position++] = BODY_PLAIN;
+                string(body);
+                return;
+            }
+
+            buffer[position++] = BODY_DEFLATED;
+            varint(deflated.rawLength);
+            varint(deflated.length);
+            ensure(deflated.length);
+            System.arraycopy(deflated.bytes, 0, buffer, position, deflated.length);
+            position += deflated.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void int64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+    }
+
+    private final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            if (buffer.length < 2 || buffer[1] != BINARY_VERSION) {
+                throw new IllegalStateException("Unknown stored record version " + (buffer.length < 2 ? "" : buffer[1]));
+            }
+
+            this.buffer = buffer;
+            this.position = 2;
+        }
+
+        UUID uuid() {
+            return new UUID(int64(), int64());
+        }
+
+        String string() {
+            int length = varint() - 1;
+            if (length < 0) {
+                return null;
+            }
+
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+
+            return value;
+        }
+
+        String body() {
+            if (buffer[position++] == BODY_PLAIN) {
+                return string();
+            }
+
+            int rawLength = varint();
+            int length = varint();
+            String body = decompress(buffer, position, length, rawLength);
+            position += length;
+
+            return body;
+        }
+
+        Map<String, String> map() {
+            int size = varint() - 1;
+            if (size < 0) {
+                return null;
+            }
+
+            Map<String, String> map = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                map.put(string(), string());
+            }
+
+            return map;
+        }
+
+        List<String> list() {
+            int size = varint() - 1;
+            if (size < 0) {
+                return null;
+            }
+
+            List<String> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(string());
+            }
+
+            return list;
+        }
+
+        private long int64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xff);
+            }
+
+            return value;
+        }
+
+        private int varint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                b = buffer[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            return value;
+        }
+    }
+}
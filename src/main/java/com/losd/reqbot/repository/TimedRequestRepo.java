@@ -0,0 +1,104 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.metrics.LatencyTimer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.Request;
+
+import java.util.List;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class TimedRequestRepo implements RequestRepo {
+    private final RequestRepo delegate;
+    private final LatencyTimer save;
+    private final LatencyTimer saveAll;
+    private final LatencyTimer getByBucket;
+    private final LatencyTimer streamRawByBucket;
+    private final LatencyTimer getRawByBucketAfter;
+    private final LatencyTimer getBuckets;
+
+    public TimedRequestRepo(RequestRepo delegate, ReqbotMetrics metrics, String prefix) {
+        this.delegate = delegate;
+        this.save = metrics.timer(prefix + "save");
+        this.saveAll = metrics.timer(prefix + "saveAll");
+        this.getByBucket = metrics.timer(prefix + "getByBucket");
+        this.streamRawByBucket = metrics.timer(prefix + "streamRawByBucket");
+        this.getRawByBucketAfter = metrics.timer(prefix + "getRawByBucketAfter");
+        this.getBuckets = metrics.timer(prefix + "getBuckets");
+    }
+
+    @Override
+    public void save(Request request) {
+        long start = System.nanoTime();
+        delegate.save(request);
+        save.recordSince(start);
+    }
+
+    @Override
+    public void saveAll(List<Request> requests) {
+        long start = System.nanoTime();
+        delegate.saveAll(requests);
+        saveAll.recordSince(start);
+    }
+
+    @Override
+    public List<Request> getByBucket(String bucket) {
+        long start = System.nanoTime();
+        List<Request> requests = delegate.getByBucket(bucket);
+        getByBucket.recordSince(start);
+        return requests;
+    }
+
+    // the page is written out as it is read, so this includes sending it to the client
+    @Override
+    public void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page) {
+        long start = System.nanoTime();
+        delegate.streamRawByBucket(bucket, cursor, limit, page);
+        streamRawByBucket.recordSince(start);
+    }
+
+    @Override
+    public List<String> getRawByBucketAfter(String bucket, String after) {
+        long start = System.nanoTime();
+        List<String> requests = delegate.getRawByBucketAfter(bucket, after);
+        getRawByBucketAfter.recordSince(start);
+        return requests;
+    }
+
+    @Override
+    public List<String> getBuckets() {
+        long start = System.nanoTime();
+        List<String> buckets = delegate.getBuckets();
+        getBuckets.recordSince(start);
+        return buckets;
+    }
+
+    @Override
+    public List<String> getBuckets(long cursor, long count) {
+        long start = System.nanoTime();
+        List<String> buckets = delegate.getBuckets(cursor, count);
+        getBuckets.recordSince(start);
+        return buckets;
+    }
+}
@@ -0,0 +1,105 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.metrics.LatencyTimer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.Response;
+
+import java.util.List;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class TimedResponseRepo implements ResponseRepo {
+    private final ResponseRepo delegate;
+    private final LatencyTimer get;
+    private final LatencyTimer save;
+    private final LatencyTimer getAll;
+    private final LatencyTimer getByTag;
+    private final LatencyTimer streamRawByTag;
+    private final LatencyTimer getTags;
+
+    public TimedResponseRepo(ResponseRepo delegate, ReqbotMetrics metrics, String prefix) {
+        this.delegate = delegate;
+        this.get = metrics.timer(prefix + "get");
+        this.save = metrics.timer(prefix + "save");
+        this.getAll = metrics.timer(prefix + "getAll");
+        this.getByTag = metrics.timer(prefix + "getByTag");
+        this.streamRawByTag = metrics.timer(prefix + "streamRawByTag");
+        this.getTags = metrics.timer(prefix + "getTags");
+    }
+
+    @Override
+    public Response get(String uuid) {
+        long start = System.nanoTime();
+        Response response = delegate.get(uuid);
+        get.recordSince(start);
+        return response;
+    }
+
+    @Override
+    public void save(Response response) {
+        long start = System.nanoTime();
+        delegate.save(response);
+        save.recordSince(start);
+    }
+
+    @Override
+    public List<Response> getAll() {
+        long start = System.nanoTime();
+        List<Response> responses = delegate.getAll();
+        getAll.recordSince(start);
+        return responses;
+    }
+
+    @Override
+    public List<Response> getByTag(String tag) {
+        long start = System.nanoTime();
+        List<Response> responses = delegate.getByTag(tag);
+        getByTag.recordSince(start);
+        return responses;
+    }
+
+    // the page is written out as it is read, so this includes sending it to the client
+    @Override
+    public void streamRawByTag(String tag, long cursor, int limit, PageConsumer page) {
+        long start = System.nanoTime();
+        delegate.streamRawByTag(tag, cursor, limit, page);
+        streamRawByTag.recordSince(start);
+    }
+
+    @Override
+    public List<String> getTags() {
+        long start = System.nanoTime();
+        List<String> tags = delegate.getTags();
+        getTags.recordSince(start);
+        return tags;
+    }
+
+    @Override
+    public List<String> getTags(long cursor, long count) {
+        long start = System.nanoTime();
+        List<String> tags = delegate.getTags(cursor, count);
+        getTags.recordSince(start);
+        return tags;
+    }
+}
@@ -0,0 +1,190 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class WriteBehindRequestRepo implements RequestRepo, InitializingBean, DisposableBean {
+    public static final String QUEUE_DEPTH_METRIC = "reqbot.request.writebehind.queue";
+    public static final String OVERFLOW_METRIC = "reqbot.request.writebehind.overflow";
+    public static final String BATCH_METRIC = "reqbot.request.writebehind.batches";
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    Logger logger = LoggerFactory.getLogger(WriteBehindRequestRepo.class);
+
+    @Autowired
+    GaugeService gaugeService;
+
+    @Autowired
+    CounterService counterService;
+
+    private final RequestRepo delegate;
+    private final BlockingQueue<Request> queue;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread flusher;
+
+    private volatile boolean running = false;
+
+    public WriteBehindRequestRepo(RequestRepo delegate, RequestSettings settings) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(settings.getWriteBehindCapacity());
+        this.batchSize = Math.max(1, settings.getBatchSize());
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.getLingerMillis());
+        this.flusher = new Thread(this::flushLoop, "reqbot-write-behind");
+        this.flusher.setDaemon(true);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        flusher.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        flusher.join();
+
+        // anything that raced in after the flusher stopped still gets written
+        List<Request> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    @Override
+    public void save(Request request) {
+        if (running && queue.offer(request)) {
+            return;
+        }
+
+        // the queue is full (or we are shutting down) so the caller pays for the round trip
+        counterService.increment(OVERFLOW_METRIC);
+        delegate.save(request);
+    }
+
+    @Override
+    public void saveAll(List<Request> requests) {
+        requests.forEach(this::save);
+    }
+
+    @Override
+    public List<Request> getByBucket(String bucket) {
+        return delegate.getByBucket(bucket);
+    }
+
+    @Override
+    public void streamRawByBucket(String bucket, long cursor, int limit, PageConsumer page) {
+        delegate.streamRawByBucket(bucket, cursor, limit, page);
+    }
+
+    @Override
+    public List<String> getRawByBucketAfter(String bucket, String after) {
+        return delegate.getRawByBucketAfter(bucket, after);
+    }
+
+    @Override
+    public List<String> getBuckets() {
+        return delegate.getBuckets();
+    }
+
+    @Override
+    public List<String> getBuckets(long cursor, long count) {
+        return delegate.getBuckets(cursor, count);
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void flushLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                gaugeService.submit(QUEUE_DEPTH_METRIC, queue.size());
+
+                Request first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                List<Request> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                fillBatch(batch);
+                flush(batch);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void fillBatch(List<Request> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+
+            Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Request> batch) {
+        try {
+            delegate.saveAll(batch);
+            counterService.increment(BATCH_METRIC);
+        }
+        catch (RuntimeException e) {
+            logger.error("Unable to write {} requests", batch.size(), e);
+        }
+    }
+}
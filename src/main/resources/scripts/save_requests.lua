@@ -0,0 +1,34 @@
+-- KEYS: the bucket index, then the bucket key and request key of each request
+-- ARGV: the bucket size, the channel to publish captured buckets on, then the bucket name and body of each request
+local queueSize = tonumber(ARGV[1])
+local channel = ARGV[2]
+local evicted = 0
+local published = {}
+
+for i = 2, #KEYS, 2 do
+    local bucket = KEYS[i]
+    local request = KEYS[i + 1]
+    local name = ARGV[i + 1]
+
+    redis.call('SET', request, ARGV[i + 2])
+    redis.call('LPUSH', bucket, request)
+    redis.call('ZADD', KEYS[1], 0, name)
+
+    local old = redis.call('LRANGE', bucket, queueSize, -1)
+    if #old > 0 then
+        for _, key in ipairs(old) do
+            redis.call('DEL', key)
+        end
+        redis.call('LTRIM', bucket, 0, queueSize - 1)
+        evicted = evicted + #old
+    end
+
+    -- once for each bucket in the batch, after everything has been written
+    published[name] = true
+end
+
+for name in pairs(published) do
+    redis.call('PUBLISH', channel, name)
+end
+
+return evicted
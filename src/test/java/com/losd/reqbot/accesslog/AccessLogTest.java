@@ -0,0 +1,260 @@
+package com.losd.reqbot.accesslog;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.config.AccessLogSettings;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.controller.ApiController;
+import com.losd.reqbot.controller.Capturer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.repository.RequestRepo;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class AccessLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AccessLog accessLog;
+
+    @After
+    public void teardown() throws Exception {
+        if (accessLog != null) {
+            accessLog.destroy();
+        }
+    }
+
+    @Test
+    public void it_writes_each_call_as_a_line_of_json() throws Exception {
+        AccessLogSettings settings = settings();
+        start(settings);
+
+        accessLog.log("GET", "/andrew/a \"quoted\" path", "andrew", "ApiController.request", 200, 1500000);
+        accessLog.log("GET", "/version", null, null, 200, 1000);
+        accessLog.destroy();
+
+        List<JsonObject> lines = lines(settings);
+        assertThat(lines, hasSize(2));
+        assertThat(lines.get(0).get("method").getAsString(), is("GET"));
+        assertThat(lines.get(0).get("path").getAsString(), is("/andrew/a \"quoted\" path"));
+        assertThat(lines.get(0).get("bucket").getAsString(), is("andrew"));
+        assertThat(lines.get(0).get("handler").getAsString(), is("ApiController.request"));
+        assertThat(lines.get(0).get("status").getAsInt(), is(200));
+        assertThat(lines.get(0).get("micros").getAsLong(), is(1500L));
+        assertThat(lines.get(0).has("time"), is(true));
+        assertThat(lines.get(1).has("bucket"), is(false));
+        assertThat(accessLog.getWritten(), is(2L));
+    }
+
+    @Test
+    public void it_logs_each_call_through_the_logger_when_there_is_no_file() throws Exception {
+        accessLog = new AccessLog(new AccessLogSettings());
+        accessLog.accessLogger = mock(Logger.class);
+        accessLog.afterPropertiesSet();
+
+        accessLog.log("GET", "/andrew/a/path", "andrew", "ApiController.request", 200, 1500000);
+        accessLog.destroy();
+
+        ArgumentCaptor<String> line = ArgumentCaptor.forClass(String.class);
+        verify(accessLog.accessLogger).info(line.capture());
+        JsonObject entry = new JsonParser().parse(line.getValue()).getAsJsonObject();
+        assertThat(entry.get("path").getAsString(), is("/andrew/a/path"));
+        assertThat(entry.get("status").getAsInt(), is(200));
+        assertThat(accessLog.getWritten(), is(1L));
+    }
+
+    @Test
+    public void it_drops_rather_than_waits_when_the_writer_falls_behind() throws Exception {
+        AccessLogSettings settings = settings();
+        settings.setBufferSize(2);
+        settings.setFlushMillis(TimeUnit.MINUTES.toMillis(1));
+        start(settings);
+
+        for (int i = 0; i < 100; i++) {
+            accessLog.log("GET", "/andrew", "andrew", null, 200, 0);
+        }
+        accessLog.destroy();
+
+        assertThat(accessLog.getDropped(), is(greaterThan(90L)));
+        assertThat(accessLog.getWritten() + accessLog.getDropped(), is(100L));
+        assertThat((long) lines(settings).size(), is(accessLog.getWritten()));
+    }
+
+    @Test
+    public void it_samples_each_bucket_at_its_own_ratio() throws Exception {
+        AccessLogSettings settings = settings();
+        settings.setSampleRatio(0.5);
+        settings.getBucketSampleRatios().put("noisy", 0.0);
+        settings.getBucketSampleRatios().put("important", 1.0);
+        start(settings);
+
+        for (int i = 0; i < 1000; i++) {
+            accessLog.log("GET", "/noisy", "noisy", null, 200, 0);
+            accessLog.log("GET", "/important", "important", null, 200, 0);
+            accessLog.log("GET", "/other", "other", null, 200, 0);
+        }
+        accessLog.destroy();
+
+        List<String> buckets = new ArrayList<>();
+        lines(settings).forEach(line -> buckets.add(line.get("bucket").getAsString()));
+
+        assertThat(Collections.frequency(buckets, "noisy"), is(0));
+        assertThat(Collections.frequency(buckets, "important"), is(1000));
+        assertThat(Collections.frequency(buckets, "other"), is(both(greaterThan(350)).and(lessThan(650))));
+        assertThat(accessLog.getSampledOut(), is(3000L - buckets.size()));
+    }
+
+    @Test
+    public void it_rolls_the_file_once_it_is_full() throws Exception {
+        AccessLogSettings settings = settings();
+        settings.setMaxFileBytes(1024);
+        settings.setMaxFiles(3);
+        start(settings);
+
+        for (int i = 0; i < 100; i++) {
+            accessLog.log("GET", "/andrew/" + i, "andrew", null, 200, 0);
+            // one batch per call, so each file is filled a line at a time
+            while (accessLog.getWritten() <= i) {
+                Thread.sleep(1);
+            }
+        }
+        accessLog.destroy();
+
+        Path file = folder.getRoot().toPath().resolve("access.log");
+        assertThat(Files.size(file), is(lessThanOrEqualTo(1024L)));
+        assertThat(Files.size(file.resolveSibling("access.log.1")), is(lessThanOrEqualTo(1024L)));
+        assertThat(Files.exists(file.resolveSibling("access.log.2")), is(true));
+        assertThat(Files.exists(file.resolveSibling("access.log.3")), is(false));
+
+        List<JsonObject> lines = lines(settings);
+        assertThat(lines.get(lines.size() - 1).get("path").getAsString(), is("/andrew/99"));
+    }
+
+    @Test
+    public void it_does_not_lose_entries_logged_from_many_threads() throws Exception {
+        AccessLogSettings settings = settings();
+        settings.setBufferSize(64);
+        start(settings);
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            threads.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    accessLog.log("GET", "/andrew", "andrew", null, 200, i);
+                }
+            });
+        }
+        threads.shutdown();
+        assertThat(threads.awaitTermination(30, TimeUnit.SECONDS), is(true));
+        accessLog.destroy();
+
+        assertThat(accessLog.getWritten() + accessLog.getDropped(), is(40000L));
+        assertThat((long) lines(settings).size(), is(accessLog.getWritten()));
+    }
+
+    @Test
+    public void it_is_filled_in_by_the_interceptor() throws Exception {
+        AccessLogSettings settings = settings();
+        start(settings);
+
+        Capturer capturer = new Capturer();
+        ReflectionTestUtils.setField(capturer, "requestRepo", mock(RequestRepo.class));
+        ReflectionTestUtils.setField(capturer, "requestSettings", new RequestSettings());
+        ReflectionTestUtils.setField(capturer, "metrics", new ReqbotMetrics());
+
+        ApiController controller = new ApiController();
+        ReflectionTestUtils.setField(controller, "capturer", capturer);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .addInterceptors(new AccessLogInterceptor(accessLog))
+                .build();
+
+        mockMvc.perform(post("/andrew/a/path").content("body")).andExpect(status().isOk());
+        mockMvc.perform(get("/andrew/a/path").header("X-REQBOT-HTTP-CODE", "503")).andExpect(status().isServiceUnavailable());
+        accessLog.destroy();
+
+        List<JsonObject> lines = lines(settings);
+        assertThat(lines, hasSize(2));
+        assertThat(lines.get(0).get("method").getAsString(), is("POST"));
+        assertThat(lines.get(0).get("path").getAsString(), is("/andrew/a/path"));
+        assertThat(lines.get(0).get("bucket").getAsString(), is("andrew"));
+        assertThat(lines.get(0).get("handler").getAsString(), is("ApiController.postRequest"));
+        assertThat(lines.get(1).get("status").getAsInt(), is(503));
+    }
+
+    private AccessLogSettings settings() {
+        AccessLogSettings settings = new AccessLogSettings();
+        settings.setFile(folder.getRoot().toPath().resolve("access.log").toString());
+        return settings;
+    }
+
+    private void start(AccessLogSettings settings) {
+        accessLog = new AccessLog(settings);
+        accessLog.afterPropertiesSet();
+    }
+
+    // oldest first, across every file that is left
+    private List<JsonObject> lines(AccessLogSettings settings) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("access.log");
+        List<JsonObject> lines = new ArrayList<>();
+
+        for (int number = settings.getMaxFiles() - 1; number >= 0; number--) {
+            Path rolled = number == 0 ? file : file.resolveSibling("access.log." + number);
+            if (Files.exists(rolled)) {
+                for (String line : Files.readAllLines(rolled, StandardCharsets.UTF_8)) {
+                    lines.add(new JsonParser().parse(line).getAsJsonObject());
+                }
+            }
+        }
+
+        return lines;
+    }
+}
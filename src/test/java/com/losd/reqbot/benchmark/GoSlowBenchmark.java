@@ -0,0 +1,168 @@
+package com.losd.reqbot.benchmark;
+
+import com.losd.reqbot.config.AsyncConfiguration;
+import com.losd.reqbot.config.CompressionSettings;
+import com.losd.reqbot.config.GitConfiguration;
+import com.losd.reqbot.config.RepoConfiguration;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.config.ResponseSettings;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.controller.ApiController;
+import com.losd.reqbot.controller.Capturer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.test.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.redis.RedisAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Category(Benchmark.class)
+public class GoSlowBenchmark {
+    private static final int WORKER_THREADS = 16;
+    private static final int SLOW_REQUESTS = 1000;
+    private static final int GO_SLOW_MILLIS = 5000;
+    private static final int FAST_REQUESTS = 500;
+
+    private EmbeddedWebApplicationContext context;
+    private String baseUrl;
+
+    @Before
+    public void setup() {
+        context = (EmbeddedWebApplicationContext) new SpringApplicationBuilder(BenchmarkApplication.class)
+                .properties("server.port=0",
+                        "server.undertow.worker-threads=" + WORKER_THREADS,
+                        "reqbot.request.goSlowThreads=2",
+                        "reqbot.storage=memory",
+                        "git.short.commit.id=benchmark")
+                .run();
+
+        baseUrl = "http://localhost:" + context.getEmbeddedServletContainer().getPort();
+    }
+
+    @After
+    public void teardown() {
+        context.close();
+    }
+
+    @Test
+    public void fast_requests_while_slow_requests_are_pending() throws Exception {
+        // warm up
+        measure(FAST_REQUESTS);
+
+        long[] idle = measure(FAST_REQUESTS);
+        report("fast path, nothing pending", idle);
+
+        ExecutorService clients = Executors.newFixedThreadPool(SLOW_REQUESTS);
+        CountDownLatch sent = new CountDownLatch(SLOW_REQUESTS);
+
+        for (int i = 0; i < SLOW_REQUESTS; i++) {
+            clients.submit(() -> {
+                sent.countDown();
+                call("/slow", GO_SLOW_MILLIS);
+                return null;
+            });
+        }
+
+        sent.await();
+        Thread.sleep(500);
+
+        long[] loaded = measure(FAST_REQUESTS);
+        report("fast path, " + SLOW_REQUESTS + " slow requests pending on " + WORKER_THREADS + " workers", loaded);
+
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertThat(percentile(loaded, 0.99), lessThan(TimeUnit.MILLISECONDS.toNanos(GO_SLOW_MILLIS)));
+    }
+
+    private long[] measure(int count) throws IOException {
+        long[] latencies = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            call("/fast", -1);
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private void call(String path, int goSlow) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setReadTimeout(GO_SLOW_MILLIS * 4);
+
+        if (goSlow >= 0) {
+            connection.setRequestProperty(ReqbotHttpHeaders.GO_SLOW, String.valueOf(goSlow));
+        }
+
+        try (InputStream in = connection.getInputStream()) {
+            while (in.read() != -1) {
+                // drain the body so the connection can be reused
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static void report(String name, long[] sorted) {
+        System.out.printf("%-60s p50=%6.2fms p99=%8.2fms max=%8.2fms%n", name,
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = RedisAutoConfiguration.class)
+    @Import({ApiController.class, Capturer.class, AsyncConfiguration.class, RepoConfiguration.class, RequestSettings.class,
+            ResponseSettings.class, CompressionSettings.class, ReqbotMetrics.class})
+    static class BenchmarkApplication {
+        @Bean
+        GitConfiguration gitConfiguration() {
+            return new GitConfiguration();
+        }
+    }
+}
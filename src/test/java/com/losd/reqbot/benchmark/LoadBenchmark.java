@@ -0,0 +1,382 @@
+package com.losd.reqbot.benchmark;
+
+import com.google.gson.JsonParser;
+import com.losd.reqbot.ReqBot;
+import com.losd.reqbot.config.GitConfiguration;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.test.Benchmark;
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Category(Benchmark.class)
+public class LoadBenchmark {
+    // all of these can be changed with -Dload.<name>, e.g. gradle loadTest -Dload.rate=2000 -Dload.storage=redis
+    private static final int RATE = Integer.getInteger("load.rate", 500);
+    private static final int READ_RATE = Integer.getInteger("load.readRate", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 5);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final int CLIENT_THREADS = Integer.getInteger("load.clientThreads", 64);
+    private static final int WORKER_THREADS = Integer.getInteger("load.workerThreads", 16);
+    private static final String STORAGE = System.getProperty("load.storage", "memory");
+    private static final boolean NATIVE_HANDLER = Boolean.getBoolean("load.nativeHandler");
+    private static final String MIX = System.getProperty("load.mix", "get=60,post=20,response=10,slow=5,code=5");
+    private static final int SLOW_MILLIS = Integer.getInteger("load.slowMillis", 100);
+    private static final int HTTP_CODE = Integer.getInteger("load.httpCode", 503);
+    private static final String REPORT_DIRECTORY = System.getProperty("load.reportDir", "build/reports/load");
+
+    private static final String BUCKET = "load";
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final byte[] BODY = "{\"order\":98765,\"customer\":1234,\"items\":[{\"sku\":\"ABC-123\",\"quantity\":2}]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    enum Kind {
+        GET, POST, RESPONSE, SLOW, CODE, READ
+    }
+
+    private EmbeddedWebApplicationContext context;
+    private String baseUrl;
+    private String responseKey;
+
+    @Before
+    public void setup() throws IOException {
+        // the jdk only keeps five idle connections to a host unless it is told otherwise
+        System.setProperty("http.maxConnections", String.valueOf(CLIENT_THREADS));
+
+        context = (EmbeddedWebApplicationContext) new SpringApplicationBuilder(ReqBot.class)
+                .properties("server.port=0",
+                        "server.undertow.worker-threads=" + WORKER_THREADS,
+                        "reqbot.storage=" + STORAGE,
+                        "reqbot.request.nativeHandler=" + NATIVE_HANDLER,
+                        "reqbot.journal.directory=" + new File(REPORT_DIRECTORY, "journal").getPath(),
+                        "git.short.commit.id=unknown",
+                        "logging.level.com.losd.reqbot=WARN")
+                .run();
+
+        baseUrl = "http://localhost:" + context.getEmbeddedServletContainer().getPort();
+
+        String saved = send("POST", "/responses", "{\"headers\":{\"Content-Type\":\"application/json\"},\"tags\":[\"load\"],"
+                + "\"body\":\"{\\\"status\\\":\\\"accepted\\\"}\"}");
+        responseKey = new JsonParser().parse(saved).getAsJsonObject().get("uuid").getAsString();
+    }
+
+    @After
+    public void teardown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void captures_and_reads_at_a_constant_rate() throws Exception {
+        Kind[] mix = mix(MIX);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+        ExecutorService readers = Executors.newFixedThreadPool(Math.max(2, CLIENT_THREADS / 8));
+
+        try {
+            run(mix, clients, readers, WARMUP_SECONDS);
+            Results results = run(mix, clients, readers, SECONDS);
+
+            String report = report(results);
+            System.out.print(report);
+            write(report, results);
+
+            assertThat(results.total(), greaterThan(0L));
+        }
+        finally {
+            clients.shutdownNow();
+            readers.shutdownNow();
+        }
+    }
+
+    private Results run(Kind[] mix, ExecutorService clients, ExecutorService readers, int seconds) throws InterruptedException {
+        Results results = new Results();
+        Random random = new Random(42);
+
+        Thread captures = new Thread(() -> drive(RATE, seconds, clients, results, n -> mix[random.nextInt(mix.length)]));
+        Thread reads = new Thread(() -> drive(READ_RATE, seconds, readers, results, n -> Kind.READ));
+
+        captures.start();
+        reads.start();
+        captures.join();
+        reads.join();
+
+        // let whatever is still queued or in flight finish, it counts against the run it was sent in
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds + SLOW_MILLIS / 1000 + 30);
+        while (results.outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        return results;
+    }
+
+    // an open model: each call is due at a fixed time whether or not the ones before it have come back, and its
+    // latency is measured from when it was due. a server that stalls is charged for every call that should have
+    // gone out while it was stalled, which is the coordinated omission a closed loop of clients hides
+    private void drive(int rate, int seconds, ExecutorService pool, Results results, KindChooser chooser) {
+        if (rate <= 0) {
+            return;
+        }
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long calls = (long) rate * seconds;
+        long start = System.nanoTime();
+
+        for (long n = 0; n < calls; n++) {
+            long due = start + n * interval;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Kind kind = chooser.choose(n);
+            long sequence = n;
+            results.outstanding.incrementAndGet();
+            pool.execute(() -> {
+                long sent = System.nanoTime();
+                boolean ok = call(kind, sequence);
+                long done = System.nanoTime();
+
+                results.record(kind, done - due, done - sent, ok);
+                results.outstanding.decrementAndGet();
+            });
+        }
+
+        results.elapsedNanos(System.nanoTime() - start);
+    }
+
+    private boolean call(Kind kind, long n) {
+        try {
+            switch (kind) {
+                case GET:
+                    return status("GET", "/" + BUCKET + "/a/path?n=" + n, null, null, null) == 200;
+                case POST:
+                    return status("POST", "/" + BUCKET + "/a/path?n=" + n, BODY, null, null) == 200;
+                case RESPONSE:
+                    return status("GET", "/" + BUCKET + "/response/" + responseKey, null, null, null) == 200;
+                case SLOW:
+                    return status("GET", "/" + BUCKET + "/slow", null, ReqbotHttpHeaders.GO_SLOW, String.valueOf(SLOW_MILLIS)) == 200;
+                case CODE:
+                    return status("GET", "/" + BUCKET + "/code", null, ReqbotHttpHeaders.HTTP_CODE, String.valueOf(HTTP_CODE)) == HTTP_CODE;
+                default:
+                    return status("GET", "/buckets/" + BUCKET + "?limit=20", null, null, null) == 200;
+            }
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private int status(String method, String path, byte[] body, String header, String value) throws IOException {
+        HttpURLConnection connection = open(method, path, body, header, value);
+        int status = connection.getResponseCode();
+
+        // the body has to be read to the end for the connection to be kept alive
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // drain
+                }
+            }
+        }
+
+        return status;
+    }
+
+    private String send(String method, String path, String json) throws IOException {
+        HttpURLConnection connection = open(method, path, json.getBytes(StandardCharsets.UTF_8), null, null);
+        try (InputStream in = connection.getInputStream()) {
+            Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+    }
+
+    private HttpURLConnection open(String method, String path, byte[] body, String header, String value) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+
+        if (header != null && value != null) {
+            connection.setRequestProperty(header, value);
+        }
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        return connection;
+    }
+
+    // get=60,post=20 becomes a table of 80 kinds to pick from
+    private static Kind[] mix(String mix) {
+        Map<Kind, Integer> weights = new EnumMap<>(Kind.class);
+        int total = 0;
+        for (String part : mix.split(",")) {
+            String[] weight = part.trim().split("=");
+            Kind kind = Kind.valueOf(weight[0].trim().toUpperCase());
+            if (kind == Kind.READ) {
+                throw new IllegalArgumentException("reads have their own rate, set load.readRate");
+            }
+            weights.put(kind, Integer.parseInt(weight[1].trim()));
+            total += weights.get(kind);
+        }
+
+        Kind[] table = new Kind[total];
+        int i = 0;
+        for (Map.Entry<Kind, Integer> weight : weights.entrySet()) {
+            for (int n = 0; n < weight.getValue(); n++) {
+                table[i++] = weight.getKey();
+            }
+        }
+        return table;
+    }
+
+    private String report(Results results) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%nreqbot load report%n"));
+        report.append(String.format("commit %s, storage %s (%s), native handler %s, %d undertow workers, %d clients%n",
+                context.getBean(GitConfiguration.class).getShortCommitId(), STORAGE,
+                context.getBean("requestStore").getClass().getSimpleName(), NATIVE_HANDLER, WORKER_THREADS, CLIENT_THREADS));
+        report.append(String.format("captures at %d/s (%s), bucket reads at %d/s, for %ds after %ds warm up%n",
+                RATE, MIX, READ_RATE, SECONDS, WARMUP_SECONDS));
+        report.append(String.format("latency in ms, measured from when each call was due%n%n"));
+        report.append(String.format("%-9s %8s %10s %7s %8s %8s %8s %8s %8s   %s%n",
+                "kind", "count", "achieved/s", "errors", "p50", "p90", "p99", "p99.9", "max", "p99 from send"));
+
+        for (Kind kind : Kind.values()) {
+            Histogram corrected = results.corrected.get(kind);
+            if (corrected.getTotalCount() == 0) {
+                continue;
+            }
+
+            report.append(String.format("%-9s %8d %10.1f %7d %8.2f %8.2f %8.2f %8.2f %8.2f   %.2f%n",
+                    kind.name().toLowerCase(),
+                    corrected.getTotalCount(),
+                    corrected.getTotalCount() / (results.elapsedNanos / 1e9),
+                    results.errors.get(kind).get(),
+                    corrected.getValueAtPercentile(50) / 1000.0,
+                    corrected.getValueAtPercentile(90) / 1000.0,
+                    corrected.getValueAtPercentile(99) / 1000.0,
+                    corrected.getValueAtPercentile(99.9) / 1000.0,
+                    corrected.getMaxValue() / 1000.0,
+                    results.uncorrected.get(kind).getValueAtPercentile(99) / 1000.0));
+        }
+
+        return report.toString();
+    }
+
+    // the .hgrm files can be put side by side with the hdrhistogram plotter to compare runs
+    private void write(String report, Results results) throws IOException {
+        File directory = new File(REPORT_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+
+        String name = "load-" + context.getBean(GitConfiguration.class).getShortCommitId() + "-" + STORAGE;
+        try (PrintStream out = new PrintStream(new File(directory, name + ".txt"), "UTF-8")) {
+            out.print(report);
+        }
+
+        for (Kind kind : Kind.values()) {
+            Histogram corrected = results.corrected.get(kind);
+            if (corrected.getTotalCount() > 0) {
+                try (PrintStream out = new PrintStream(new File(directory, name + "-" + kind.name().toLowerCase() + ".hgrm"), "UTF-8")) {
+                    corrected.outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+    }
+
+    private interface KindChooser {
+        Kind choose(long n);
+    }
+
+    private static final class Results {
+        final Map<Kind, Histogram> corrected = new EnumMap<>(Kind.class);
+        final Map<Kind, Histogram> uncorrected = new EnumMap<>(Kind.class);
+        final Map<Kind, AtomicLong> errors = new EnumMap<>(Kind.class);
+        final AtomicLong outstanding = new AtomicLong();
+        volatile long elapsedNanos;
+
+        Results() {
+            for (Kind kind : Kind.values()) {
+                corrected.put(kind, new Histogram(HIGHEST_MICROS, 3));
+                uncorrected.put(kind, new Histogram(HIGHEST_MICROS, 3));
+                errors.put(kind, new AtomicLong());
+            }
+        }
+
+        void record(Kind kind, long fromDue, long fromSent, boolean ok) {
+            if (!ok) {
+                errors.get(kind).incrementAndGet();
+            }
+
+            synchronized (this) {
+                corrected.get(kind).recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(fromDue)));
+                uncorrected.get(kind).recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(fromSent)));
+            }
+        }
+
+        // the captures and the reads each report how long they took to send everything, the longer one is kept
+        synchronized void elapsedNanos(long nanos) {
+            elapsedNanos = Math.max(elapsedNanos, nanos);
+        }
+
+        long total() {
+            return corrected.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.losd.reqbot.benchmark;
+
+import com.losd.reqbot.config.AccessLogConfiguration;
+import com.losd.reqbot.config.AccessLogSettings;
+import com.losd.reqbot.config.AsyncConfiguration;
+import com.losd.reqbot.config.CompressionSettings;
+import com.losd.reqbot.config.GitConfiguration;
+import com.losd.reqbot.config.NativeHandlerConfiguration;
+import com.losd.reqbot.config.RepoConfiguration;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.config.ResponseSettings;
+import com.losd.reqbot.controller.ApiController;
+import com.losd.reqbot.controller.Capturer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.test.Benchmark;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.redis.RedisAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Category(Benchmark.class)
+public class NativeCaptureBenchmark {
+    private static final int WORKER_THREADS = 16;
+    private static final int CLIENT_THREADS = 8;
+    private static final int REQUESTS_PER_CLIENT = 2000;
+    private static final byte[] BODY = "{\"hello\":\"world\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void capture_throughput_through_spring_and_native() throws Exception {
+        double spring = run(false);
+        double nativeHandler = run(true);
+
+        System.out.printf("%-60s %8.0f req/s%n", "spring mvc, " + WORKER_THREADS + " workers", spring);
+        System.out.printf("%-60s %8.0f req/s%n", "native handler, " + WORKER_THREADS + " workers", nativeHandler);
+    }
+
+    private double run(boolean nativeHandler) throws Exception {
+        EmbeddedWebApplicationContext context = (EmbeddedWebApplicationContext) new SpringApplicationBuilder(BenchmarkApplication.class)
+                .properties("server.port=0",
+                        "server.undertow.worker-threads=" + WORKER_THREADS,
+                        "reqbot.request.nativeHandler=" + nativeHandler,
+                        "reqbot.storage=memory",
+                        "git.short.commit.id=benchmark",
+                        "reqbot.accessLog.enabled=false")
+                .run();
+
+        try {
+            String baseUrl = "http://localhost:" + context.getEmbeddedServletContainer().getPort();
+
+            // the admin endpoints are still spring's whichever way the captures go
+            call(baseUrl + "/bench?warm=up", null);
+            assertThat(call(baseUrl + "/buckets", null), containsString("bench"));
+
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+            List<Future<?>> running = new ArrayList<>();
+
+            // warm up
+            for (int i = 0; i < CLIENT_THREADS; i++) {
+                running.add(clients.submit(() -> load(baseUrl, REQUESTS_PER_CLIENT / 4)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+            running.clear();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < CLIENT_THREADS; i++) {
+                running.add(clients.submit(() -> load(baseUrl, REQUESTS_PER_CLIENT)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            clients.shutdown();
+
+            assertThat(call(baseUrl + "/buckets", null).isEmpty(), is(false));
+            return CLIENT_THREADS * REQUESTS_PER_CLIENT / (elapsed / 1e9);
+        }
+        finally {
+            context.close();
+        }
+    }
+
+    private Void load(String baseUrl, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            call(baseUrl + "/bench?n=" + i, (i & 1) == 0 ? null : BODY);
+        }
+        return null;
+    }
+
+    private String call(String url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        try (InputStream in = connection.getInputStream()) {
+            int b;
+            while ((b = in.read()) != -1) {
+                result.append((char) b);
+            }
+        }
+        return result.toString();
+    }
+
+    @Configuration
+    @EnableAutoConfiguration(exclude = RedisAutoConfiguration.class)
+    @Import({ApiController.class, Capturer.class, AsyncConfiguration.class, RepoConfiguration.class, RequestSettings.class,
+            ResponseSettings.class, CompressionSettings.class, ReqbotMetrics.class, NativeHandlerConfiguration.class,
+            AccessLogConfiguration.class, AccessLogSettings.class})
+    static class BenchmarkApplication {
+        @Bean
+        GitConfiguration gitConfiguration() {
+            return new GitConfiguration();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.losd.reqbot.config;
+
+import com.losd.reqbot.ReqBot;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.boot.test.TestRestTemplate;
+import org.springframework.boot.test.WebIntegrationTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.web.client.RestTemplate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = ReqBot.class)
+@WebIntegrationTest({"server.port=0", "reqbot.storage=memory", "git.short.commit.id=test"})
+public class MetricsConfigurationTest {
+    @Value("${local.server.port}")
+    int port;
+
+    RestTemplate rest = new TestRestTemplate();
+
+    @Test
+    public void it_keeps_the_metrics_bucket_for_the_metrics() {
+        ResponseEntity<String> metrics = rest.getForEntity(url("/metrics"), String.class);
+        assertThat(metrics.getStatusCode(), is(HttpStatus.OK));
+        assertThat(metrics.getBody(), containsString("reqbot.response.cache.hits"));
+
+        assertThat(rest.getForEntity(url("/metrics/not.a.metric"), String.class).getStatusCode(), is(HttpStatus.NOT_FOUND));
+        assertThat(rest.getForEntity(url("/buckets"), String.class).getBody(), not(containsString("metrics")));
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
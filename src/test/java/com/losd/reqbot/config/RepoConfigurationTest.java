@@ -0,0 +1,71 @@
+package com.losd.reqbot.config;
+
+import com.losd.reqbot.repository.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {RepoConfiguration.class, RedisConfiguration.class})
+@TestPropertySource(properties = "reqbot.storage=memory")
+public class RepoConfigurationTest {
+    @Autowired
+    RequestRepo requestRepo;
+
+    @Autowired
+    ResponseRepo responseRepo;
+
+    @Autowired
+    @Qualifier("requestStore")
+    RequestRepo requestStore;
+
+    @Autowired
+    @Qualifier("responseStore")
+    ResponseRepo responseStore;
+
+    @Test
+    public void it_uses_the_memory_repos_when_asked_to() {
+        assertThat(requestStore, instanceOf(RequestMemoryRepo.class));
+        assertThat(responseStore, instanceOf(ResponseMemoryRepo.class));
+    }
+
+    @Test
+    public void it_wakes_bucket_waiters_itself_without_redis() {
+        assertThat(requestRepo, instanceOf(NotifyingRequestRepo.class));
+    }
+
+    @Test
+    public void it_caches_responses_whichever_store_is_used() {
+        assertThat(responseRepo, instanceOf(CachingResponseRepo.class));
+    }
+}
@@ -3,13 +3,17 @@ package com.losd.reqbot.controller;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import com.losd.reqbot.async.BucketWaiters;
 import com.losd.reqbot.model.Request;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.repository.PageConsumer;
 import com.losd.reqbot.repository.RequestRepo;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -23,8 +27,12 @@ import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -58,6 +66,9 @@ public class ApiControllerBucketTest {
     @Mock
     RequestRepo requestRepo;
 
+    @Spy
+    BucketWaiters bucketWaiters = new BucketWaiters(1);
+
     @InjectMocks
     ApiController apiController;
 
@@ -71,22 +82,58 @@ public class ApiControllerBucketTest {
     public void it_can_get_a_list_of_buckets() throws
             Exception
     {
-        when(requestRepo.getBuckets()).thenReturn(Arrays.asList("a", "b", "c", "d"));
+        when(requestRepo.getBuckets(0, Integer.MAX_VALUE + 1L)).thenReturn(Arrays.asList("a", "b", "c", "d"));
 
         MvcResult result = mockMvc.perform(get("/buckets")).andExpect(status().isOk()).andReturn();
 
         assertThat(result.getResponse().getContentAsString(), is(equalTo("[\"a\",\"b\",\"c\",\"d\"]")));
-        verify(requestRepo, times(1)).getBuckets();
+        verify(requestRepo, times(1)).getBuckets(0, Integer.MAX_VALUE + 1L);
+        assertThat(result.getResponse().getHeader(ReqbotHttpHeaders.NEXT_CURSOR), is(nullValue()));
+    }
+
+    @Test
+    public void it_can_get_a_page_of_buckets() throws
+            Exception
+    {
+        when(requestRepo.getBuckets(2, 3)).thenReturn(Arrays.asList("c", "d", "e"));
+
+        MvcResult result = mockMvc.perform(get("/buckets?cursor=2&limit=2")).andExpect(status().isOk()).andReturn();
+
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("[\"c\",\"d\"]")));
+        assertThat(result.getResponse().getHeader(ReqbotHttpHeaders.NEXT_CURSOR), is(equalTo("4")));
+    }
+
+    @Test
+    public void it_does_not_give_a_cursor_for_the_last_page_of_buckets() throws
+            Exception
+    {
+        when(requestRepo.getBuckets(4, 3)).thenReturn(Arrays.asList("e"));
+
+        MvcResult result = mockMvc.perform(get("/buckets?cursor=4&limit=2")).andExpect(status().isOk()).andReturn();
+
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("[\"e\"]")));
+        assertThat(result.getResponse().getHeader(ReqbotHttpHeaders.NEXT_CURSOR), is(nullValue()));
+    }
+
+    @Test
+    public void it_rejects_a_bad_page() throws
+            Exception
+    {
+        mockMvc.perform(get("/buckets?limit=0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/buckets?cursor=-1")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/buckets/a?limit=0")).andExpect(status().isBadRequest());
+
+        verifyZeroInteractions(requestRepo);
     }
 
     @Test
     public void it_returns_a_404_if_there_are_no_buckets() throws
             Exception
     {
-        when(requestRepo.getBuckets()).thenReturn(Collections.emptyList());
+        when(requestRepo.getBuckets(0, Integer.MAX_VALUE + 1L)).thenReturn(Collections.emptyList());
 
         mockMvc.perform(get("/buckets")).andExpect(status().isNotFound()).andExpect(status().reason("Not Found"));
-        verify(requestRepo, times(1)).getBuckets();
+        verify(requestRepo, times(1)).getBuckets(0, Integer.MAX_VALUE + 1L);
     }
 
     @Test
@@ -101,21 +148,86 @@ public class ApiControllerBucketTest {
         }.getType();
         String listAsJson = gson.toJson(list, listType);
 
-        when(requestRepo.getByBucket("a")).thenReturn(list);
+        // one request per chunk
+        doAnswer(invocation -> {
+            PageConsumer chunks = (PageConsumer) invocation.getArguments()[3];
+            chunks.accept(Collections.singletonList(gson.toJson(list.get(0))));
+            chunks.accept(Collections.singletonList(gson.toJson(list.get(1))));
+            return null;
+        }).when(requestRepo).streamRawByBucket(eq("a"), eq(0L), eq(Integer.MAX_VALUE), any());
 
         MvcResult result = mockMvc.perform(get("/buckets/a")).andExpect(status().isOk()).andReturn();
 
         assertThat(result.getResponse().getContentAsString(), is(equalTo(listAsJson)));
-        verify(requestRepo, times(1)).getByBucket("a");
+        assertThat(result.getResponse().getContentType(), is(equalTo("application/json;charset=UTF-8")));
+        verify(requestRepo, times(1)).streamRawByBucket(eq("a"), eq(0L), eq(Integer.MAX_VALUE), any());
+        verify(requestRepo, never()).getByBucket("a");
     }
 
     @Test
-    public void it_returns_a_404_if_there_are_no_responses_for_a_tag() throws
+    public void it_can_get_a_page_of_requests_for_a_bucket() throws
             Exception
     {
-        when(requestRepo.getByBucket("a")).thenReturn(Collections.emptyList());
+        doAnswer(invocation -> {
+            PageConsumer page = (PageConsumer) invocation.getArguments()[3];
+            page.nextCursor(15);
+            page.accept(Arrays.asList("{\"a\":1}", "{\"a\":2}"));
+            return null;
+        }).when(requestRepo).streamRawByBucket(eq("a"), eq(5L), eq(10), any());
+
+        MvcResult result = mockMvc.perform(get("/buckets/a?cursor=5&limit=10")).andExpect(status().isOk()).andReturn();
+
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("[{\"a\":1},{\"a\":2}]")));
+        assertThat(result.getResponse().getHeader(ReqbotHttpHeaders.NEXT_CURSOR), is(equalTo("15")));
+    }
 
+    @Test
+    public void it_returns_a_404_if_there_are_no_responses_for_a_tag() throws
+            Exception
+    {
         mockMvc.perform(get("/buckets/a")).andExpect(status().isNotFound()).andExpect(status().reason("Not Found"));
-        verify(requestRepo, times(1)).getByBucket("a");
+        verify(requestRepo, times(1)).streamRawByBucket(eq("a"), eq(0L), eq(Integer.MAX_VALUE), any());
+    }
+
+    @Test
+    public void it_hands_back_newer_requests_straight_away() throws
+            Exception
+    {
+        when(requestRepo.getRawByBucketAfter("a", "1")).thenReturn(Arrays.asList("{\"uuid\":\"3\"}", "{\"uuid\":\"2\"}"));
+
+        MvcResult result = mockMvc.perform(get("/buckets/a/wait?after=1")).andExpect(request().asyncStarted()).andReturn();
+
+        result.getAsyncResult();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[{\"uuid\":\"3\"},{\"uuid\":\"2\"}]"));
+    }
+
+    @Test
+    public void it_waits_for_a_request_to_be_captured() throws
+            Exception
+    {
+        when(requestRepo.getRawByBucketAfter("a", null))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList("{\"uuid\":\"1\"}"));
+
+        MvcResult result = mockMvc.perform(get("/buckets/a/wait")).andExpect(request().asyncStarted()).andReturn();
+        bucketWaiters.captured("b");
+        verify(requestRepo, times(1)).getRawByBucketAfter("a", null);
+
+        bucketWaiters.captured("a");
+
+        assertThat(result.getAsyncResult(5000), is(equalTo("[{\"uuid\":\"1\"}]")));
+        verify(requestRepo, times(2)).getRawByBucketAfter("a", null);
+    }
+
+    @Test
+    public void it_rejects_a_bad_wait() throws
+            Exception
+    {
+        mockMvc.perform(get("/buckets/a/wait?timeout=0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/buckets/a/wait?timeout=300001")).andExpect(status().isBadRequest());
+
+        verifyZeroInteractions(requestRepo);
     }
 }
@@ -1,34 +1,47 @@
 package com.losd.reqbot.controller;
 
+import com.google.common.hash.Hashing;
+import com.losd.reqbot.async.DelayScheduler;
+import com.losd.reqbot.config.RequestSettings;
 import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.metrics.ReqbotMetrics;
 import com.losd.reqbot.model.Request;
 import com.losd.reqbot.model.Response;
 import com.losd.reqbot.repository.RequestRepo;
 import com.losd.reqbot.repository.ResponseRepo;
 import org.apache.commons.lang.RandomStringUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.bind.annotation.RequestMethod;
 import uk.co.it.modular.hamcrest.date.Moments;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -66,12 +79,25 @@ public class ApiControllerRequestTest {
     @Mock
     private ResponseRepo responseRepo;
 
+    @Spy
+    private DelayScheduler delayScheduler = new DelayScheduler(1);
+
+    @Spy
+    private RequestSettings requestSettings = new RequestSettings();
+
+    @Spy
+    private ReqbotMetrics metrics = new ReqbotMetrics();
+
+    @InjectMocks
+    private Capturer capturer;
+
     @InjectMocks
     private ApiController apiController;
 
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(apiController, "capturer", capturer);
         mockMvc = MockMvcBuilders.standaloneSetup(apiController).build();
     }
 
@@ -171,13 +197,93 @@ public class ApiControllerRequestTest {
     public void it_goes_slow_when_asked() throws
             Exception {
         Instant start = Instant.now();
-        mockMvc.perform(get("/x").header(ReqbotHttpHeaders.GO_SLOW, 5000))
+        MvcResult result = mockMvc.perform(get("/x").header(ReqbotHttpHeaders.GO_SLOW, 5000))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result.getAsyncResult();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().string(HttpStatus.OK.getReasonPhrase()));
 
         Instant end = Instant.now();
 
-        assertThat(Duration.between(start, end).toMillis(), is(greaterThan(5000L)));
+        assertThat(Duration.between(start, end).toMillis(), is(greaterThanOrEqualTo(5000L)));
+    }
+
+    @Test
+    public void it_does_not_hold_the_request_thread_when_going_slow() throws
+            Exception {
+        String path = "/x";
+        Instant start = Instant.now();
+        MvcResult result = mockMvc.perform(post(path).content("hello").header(ReqbotHttpHeaders.GO_SLOW, 1000))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertThat(Duration.between(start, Instant.now()).toMillis(), is(lessThan(1000L)));
+
+        result.getAsyncResult();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-REQBOT-PATH", path))
+                .andExpect(content().string(HttpStatus.OK.getReasonPhrase()));
+
+        validate("x", Collections.emptyMap(), RequestMethod.POST, "hello", path);
+    }
+
+    @Test
+    public void it_goes_slow_with_the_requested_response() throws
+            Exception {
+        Response response = new Response.Builder()
+                .addHeader("test-header", "testvalue")
+                .body(RandomStringUtils.randomAlphanumeric(30))
+                .build();
+
+        when(responseRepo.get(response.getUuid().toString())).thenReturn(response);
+
+        String path = "/x/response/" + response.getUuid();
+        MvcResult result = mockMvc.perform(get(path).header("x-reqbot-go-slow", 100).header(ReqbotHttpHeaders.HTTP_CODE, 404))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result.getAsyncResult();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(response.getBody()))
+                .andExpect(header().string("test-header", "testvalue"));
+
+        validate("x", Collections.emptyMap(), RequestMethod.GET, null, path);
+    }
+
+    @Test
+    public void it_goes_slow_before_saying_it_cannot_return_the_response() throws
+            Exception {
+        when(responseRepo.get("aaaaaa")).thenReturn(null);
+
+        Instant start = Instant.now();
+        MvcResult result = mockMvc.perform(get("/x").header(ReqbotHttpHeaders.GO_SLOW, 500).header(ReqbotHttpHeaders.RESPONSE, "aaaaaa"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result.getAsyncResult();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(status().reason("Unable to return the requested response"));
+
+        assertThat(Duration.between(start, Instant.now()).toMillis(), is(greaterThanOrEqualTo(500L)));
+    }
+
+    @Test
+    public void it_handles_an_empty_go_slow_header() throws
+            Exception {
+        MvcResult result = mockMvc.perform(get("/x").header(ReqbotHttpHeaders.GO_SLOW, ""))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result.getAsyncResult();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(HttpStatus.OK.getReasonPhrase()));
     }
 
     @Test
@@ -319,6 +425,32 @@ public class ApiControllerRequestTest {
         validate("x", Collections.emptyMap(), RequestMethod.POST, "hello", path);
     }
 
+    @Test
+    public void it_encodes_the_requested_response_in_its_charset() throws
+            Exception {
+        Response latin1 = new Response.Builder()
+                .addHeader("Content-Type", "text/plain;charset=ISO-8859-1")
+                .body("h\u00e9llo")
+                .build();
+        Response plain = new Response.Builder().body("h\u00e9llo").build();
+
+        when(responseRepo.get(latin1.getUuid().toString())).thenReturn(latin1);
+        when(responseRepo.get(plain.getUuid().toString())).thenReturn(plain);
+
+        mockMvc.perform(get("/x/response/" + latin1.getUuid()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Length", "5"))
+                .andExpect(content().bytes("h\u00e9llo".getBytes(StandardCharsets.ISO_8859_1)));
+
+        mockMvc.perform(get("/x/response/" + plain.getUuid()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/plain;charset=UTF-8"))
+                .andExpect(header().string("Content-Length", "6"))
+                .andExpect(content().bytes("h\u00e9llo".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(plain.compiled(), is(sameInstance(plain.compiled())));
+    }
+
     @Test
     public void it_handles_a_bad_expected_response_header() throws Exception {
         when(responseRepo.get("aaaaa")).thenReturn(null);
@@ -339,7 +471,111 @@ public class ApiControllerRequestTest {
                 .andExpect(status().reason("Unable to return the requested response"));
     }
 
-    private void validate(String bucket,
+    @Test
+    public void it_decodes_a_post_in_the_charset_it_was_sent_in() throws
+            Exception {
+        String path = "/x";
+        mockMvc.perform(post(path).contentType("text/plain;charset=ISO-8859-1").content("h\u00e9llo".getBytes(StandardCharsets.ISO_8859_1)))
+                .andExpect(status().isOk());
+
+        Request request = validate("x", Collections.emptyMap(), RequestMethod.POST, "h\u00e9llo", path);
+        assertThat(request.getBodyEncoding(), is(nullValue()));
+    }
+
+    @Test
+    public void it_keeps_a_binary_post_as_base64() throws
+            Exception {
+        byte[] body = {(byte) 0x89, 'P', 'N', 'G', 0, (byte) 0xff};
+        String path = "/x";
+        mockMvc.perform(post(path).contentType("application/octet-stream").content(body))
+                .andExpect(status().isOk());
+
+        Request request = validate("x", Collections.emptyMap(), RequestMethod.POST, Base64.getEncoder().encodeToString(body), path);
+        assertThat(request.getBodyEncoding(), is("base64"));
+    }
+
+    @Test
+    public void it_truncates_a_post_over_the_capture_limit() throws
+            Exception {
+        requestSettings.setMaxCapturedBytes(10);
+        String body = StringUtils.repeat("\u00e9", 100);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        String path = "/x";
+        mockMvc.perform(post(path).content(bytes)).andExpect(status().isOk());
+
+        Request request = validate("x", Collections.emptyMap(), RequestMethod.POST, StringUtils.repeat("\u00e9", 5), path);
+        assertThat(request.getBodyLength(), is((long) bytes.length));
+        assertThat(request.getBodySha256(), is(equalTo(Hashing.sha256().hashBytes(bytes).toString())));
+    }
+
+    @Test
+    public void it_does_not_truncate_a_post_at_the_capture_limit() throws
+            Exception {
+        requestSettings.setMaxCapturedBytes(5);
+
+        String path = "/x";
+        mockMvc.perform(post(path).content("hello")).andExpect(status().isOk());
+
+        Request request = validate("x", Collections.emptyMap(), RequestMethod.POST, "hello", path);
+        assertThat(request.getBodyLength(), is(nullValue()));
+        assertThat(request.getBodySha256(), is(nullValue()));
+    }
+
+    @Test
+    public void it_times_saving_the_request_and_looking_up_the_response() throws
+            Exception {
+        Response response = new Response.Builder().body("hello").build();
+        when(responseRepo.get(response.getUuid().toString())).thenReturn(response);
+
+        mockMvc.perform(get("/x")).andExpect(status().isOk());
+        mockMvc.perform(get("/x/response/" + response.getUuid())).andExpect(status().isOk());
+
+        assertThat(metrics.timer(ReqbotMetrics.CAPTURE_SAVE).getCount(), is(2L));
+        assertThat(metrics.timer(ReqbotMetrics.CAPTURE_LOOKUP).getCount(), is(1L));
+    }
+
+    @Test
+    public void it_only_sends_server_timing_when_asked() throws
+            Exception {
+        mockMvc.perform(get("/x")).andExpect(header().doesNotExist(ReqbotHttpHeaders.SERVER_TIMING));
+    }
+
+    @Test
+    public void it_breaks_down_its_own_time_in_server_timing() throws
+            Exception {
+        requestSettings.setServerTiming(true);
+        Response response = new Response.Builder().body("hello").build();
+        when(responseRepo.get(response.getUuid().toString())).thenReturn(response);
+
+        String plain = mockMvc.perform(get("/x")).andReturn().getResponse().getHeader(ReqbotHttpHeaders.SERVER_TIMING);
+        String programmed = mockMvc.perform(get("/x/response/" + response.getUuid())).andReturn().getResponse()
+                .getHeader(ReqbotHttpHeaders.SERVER_TIMING);
+
+        assertThat(plain.matches("save;dur=\\d+\\.\\d{3}, total;dur=\\d+\\.\\d{3}"), is(true));
+        assertThat(programmed.matches("save;dur=\\d+\\.\\d{3}, lookup;dur=\\d+\\.\\d{3}, total;dur=\\d+\\.\\d{3}"), is(true));
+    }
+
+    @Test
+    public void it_includes_the_go_slow_wait_in_server_timing() throws
+            Exception {
+        requestSettings.setServerTiming(true);
+        MvcResult result = mockMvc.perform(get("/x").header(ReqbotHttpHeaders.GO_SLOW, 100))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result.getAsyncResult();
+        String timing = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(ReqbotHttpHeaders.SERVER_TIMING);
+
+        Matcher goSlow = Pattern.compile("goslow;dur=(\\d+\\.\\d{3}), total;dur=(\\d+\\.\\d{3})").matcher(timing);
+        assertThat(goSlow.find(), is(true));
+        assertThat(Double.parseDouble(goSlow.group(1)), is(greaterThanOrEqualTo(100.0)));
+        assertThat(Double.parseDouble(goSlow.group(2)), is(greaterThanOrEqualTo(Double.parseDouble(goSlow.group(1)))));
+    }
+
+    private Request validate(String bucket,
                           Map<String, String> queryParameters,
                           RequestMethod method,
                           String body,
@@ -358,5 +594,7 @@ public class ApiControllerRequestTest {
 
         Date timestamp = Date.from(Instant.parse(request.getTimestamp()));
         assertThat(timestamp, within(2, TimeUnit.SECONDS, Moments.now()));
+
+        return request;
     }
 }
@@ -4,6 +4,8 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.losd.reqbot.model.Response;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.repository.PageConsumer;
 import com.losd.reqbot.repository.ResponseRepo;
 import org.junit.Before;
 import org.junit.Test;
@@ -25,6 +27,7 @@ import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -75,22 +78,34 @@ public class ApiControllerTagTest {
     public void it_can_get_a_list_of_tags() throws
             Exception
     {
-        when(responseRepo.getTags()).thenReturn(Arrays.asList("a", "b", "c", "d"));
+        when(responseRepo.getTags(0, Integer.MAX_VALUE + 1L)).thenReturn(Arrays.asList("a", "b", "c", "d"));
 
         MvcResult result = mockMvc.perform(get("/tags")).andExpect(status().isOk()).andReturn();
 
         assertThat(result.getResponse().getContentAsString(), is(equalTo("[\"a\",\"b\",\"c\",\"d\"]")));
-        verify(responseRepo, times(1)).getTags();
+        verify(responseRepo, times(1)).getTags(0, Integer.MAX_VALUE + 1L);
+    }
+
+    @Test
+    public void it_can_get_a_page_of_tags() throws
+            Exception
+    {
+        when(responseRepo.getTags(0, 3)).thenReturn(Arrays.asList("a", "b", "c"));
+
+        MvcResult result = mockMvc.perform(get("/tags?limit=2")).andExpect(status().isOk()).andReturn();
+
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("[\"a\",\"b\"]")));
+        assertThat(result.getResponse().getHeader(ReqbotHttpHeaders.NEXT_CURSOR), is(equalTo("2")));
     }
 
     @Test
     public void it_returns_a_404_if_there_are_no_tags() throws
             Exception
     {
-        when(responseRepo.getTags()).thenReturn(Collections.emptyList());
+        when(responseRepo.getTags(0, Integer.MAX_VALUE + 1L)).thenReturn(Collections.emptyList());
 
         mockMvc.perform(get("/tags")).andExpect(status().isNotFound()).andExpect(status().reason("Not Found"));
-        verify(responseRepo, times(1)).getTags();
+        verify(responseRepo, times(1)).getTags(0, Integer.MAX_VALUE + 1L);
     }
 
     @Test
@@ -105,21 +120,40 @@ public class ApiControllerTagTest {
         }.getType();
         String listAsJson = gson.toJson(list, listType);
 
-        when(responseRepo.getByTag("a")).thenReturn(list);
+        doAnswer(invocation -> {
+            PageConsumer chunks = (PageConsumer) invocation.getArguments()[3];
+            chunks.accept(Arrays.asList(gson.toJson(list.get(0)), gson.toJson(list.get(1))));
+            return null;
+        }).when(responseRepo).streamRawByTag(eq("a"), eq(0L), eq(Integer.MAX_VALUE), any());
 
         MvcResult result = mockMvc.perform(get("/tags/a")).andExpect(status().isOk()).andReturn();
 
         assertThat(result.getResponse().getContentAsString(), is(equalTo(listAsJson)));
-        verify(responseRepo, times(1)).getByTag("a");
+        verify(responseRepo, times(1)).streamRawByTag(eq("a"), eq(0L), eq(Integer.MAX_VALUE), any());
+        verify(responseRepo, never()).getByTag("a");
     }
 
     @Test
-    public void it_returns_a_404_if_there_are_no_responses_for_a_tag() throws
+    public void it_can_get_a_page_of_responses_for_a_tag() throws
             Exception
     {
-        when(responseRepo.getByTag("a")).thenReturn(Collections.emptyList());
+        doAnswer(invocation -> {
+            PageConsumer page = (PageConsumer) invocation.getArguments()[3];
+            page.accept(Arrays.asList("{\"a\":1}"));
+            return null;
+        }).when(responseRepo).streamRawByTag(eq("a"), eq(3L), eq(1), any());
 
+        MvcResult result = mockMvc.perform(get("/tags/a?cursor=3&limit=1")).andExpect(status().isOk()).andReturn();
+
+        assertThat(result.getResponse().getContentAsString(), is(equalTo("[{\"a\":1}]")));
+        assertThat(result.getResponse().getHeader(ReqbotHttpHeaders.NEXT_CURSOR), is(nullValue()));
+    }
+
+    @Test
+    public void it_returns_a_404_if_there_are_no_responses_for_a_tag() throws
+            Exception
+    {
         mockMvc.perform(get("/tags/a")).andExpect(status().isNotFound()).andExpect(status().reason("Not Found"));
-        verify(responseRepo, times(1)).getByTag("a");
+        verify(responseRepo, times(1)).streamRawByTag(eq("a"), eq(0L), eq(Integer.MAX_VALUE), any());
     }
 }
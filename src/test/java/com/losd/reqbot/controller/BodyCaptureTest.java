@@ -0,0 +1,77 @@
+package com.losd.reqbot.controller;
+
+import com.losd.reqbot.model.Request;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class BodyCaptureTest {
+    private static final byte[] BODY = "{\"name\":\"a request body\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void it_reads_a_body_that_matches_its_content_length_into_one_buffer() throws IOException {
+        RecordingStream in = new RecordingStream(BODY);
+        Request.Builder builder = new Request.Builder().bucket("a").method("POST");
+
+        new BodyCapture(1024).capture(in, BODY.length, null, builder);
+
+        assertThat(builder.build().getBody(), is(equalTo(new String(BODY, StandardCharsets.UTF_8))));
+        assertThat(in.buffers.keySet(), hasSize(1));
+        assertThat(in.buffers.keySet().iterator().next().length, is(BODY.length));
+    }
+
+    @Test
+    public void it_keeps_reading_past_a_content_length_that_is_too_short() throws IOException {
+        Request.Builder builder = new Request.Builder().bucket("a").method("POST");
+
+        new BodyCapture(1024).capture(new ByteArrayInputStream(BODY), 4, null, builder);
+
+        assertThat(builder.build().getBody(), is(equalTo(new String(BODY, StandardCharsets.UTF_8))));
+        assertThat(builder.build().getBodyLength(), is(nullValue()));
+    }
+
+    // remembers every array it was asked to read into
+    private static class RecordingStream extends ByteArrayInputStream {
+        final Map<byte[], Boolean> buffers = new IdentityHashMap<>();
+
+        RecordingStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            buffers.put(b, true);
+            return super.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.losd.reqbot.controller;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.ReqBot;
+import com.losd.reqbot.constant.ReqbotHttpHeaders;
+import com.losd.reqbot.metrics.LatencyTimer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import com.losd.reqbot.repository.RequestRepo;
+import com.losd.reqbot.repository.ResponseRepo;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.boot.test.TestRestTemplate;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+// the same calls are made to reqbot with and without the native handler, and have to be answered the same way
+public class NativeCaptureHandlerTest {
+    private static final Response PROGRAMMED = new Response.Builder()
+            .addHeader("Content-Type", "application/json")
+            .addHeader("X-REQBOT-EXAMPLE", "programmed")
+            .body("{\"programmed\":true}")
+            .build();
+
+    private static EmbeddedWebApplicationContext spring;
+    private static EmbeddedWebApplicationContext nativeHandler;
+
+    private final RestTemplate rest = new TestRestTemplate();
+
+    @BeforeClass
+    public static void start() {
+        spring = start(false);
+        nativeHandler = start(true);
+    }
+
+    @AfterClass
+    public static void stop() {
+        spring.close();
+        nativeHandler.close();
+    }
+
+    @Test
+    public void it_answers_a_get_the_same_way() throws InterruptedException {
+        long before = nativeCaptures();
+        ResponseEntity<String> result = same(HttpMethod.GET, "/get/a/path?size=20&page=1", new HttpHeaders(), null);
+
+        assertThat(result.getStatusCode(), is(HttpStatus.OK));
+        assertThat(result.getHeaders().getFirst(ReqbotHttpHeaders.PATH), is("/get/a/path"));
+        awaitNativeCaptures(before + 1);
+    }
+
+    @Test
+    public void it_answers_a_post_the_same_way() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(ReqbotHttpHeaders.HTTP_CODE, "201");
+
+        ResponseEntity<String> result = same(HttpMethod.POST, "/post/a/path?page=1", headers, "{\"hello\":\"world\"}");
+
+        assertThat(result.getStatusCode(), is(HttpStatus.CREATED));
+        assertThat(result.getBody(), is(HttpStatus.CREATED.getReasonPhrase()));
+        assertThat(captured(nativeHandler, "post").getBody(), is("{\"hello\":\"world\"}"));
+    }
+
+    @Test
+    public void it_answers_with_a_response_named_in_the_path_the_same_way() {
+        ResponseEntity<String> result = same(HttpMethod.GET, "/path-key/response/" + PROGRAMMED.getUuid(), new HttpHeaders(), null);
+
+        assertThat(result.getStatusCode(), is(HttpStatus.OK));
+        assertThat(result.getBody(), is("{\"programmed\":true}"));
+        assertThat(result.getHeaders().getFirst("X-REQBOT-EXAMPLE"), is("programmed"));
+    }
+
+    @Test
+    public void it_answers_with_a_response_named_in_a_header_the_same_way() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(ReqbotHttpHeaders.RESPONSE, PROGRAMMED.getUuid().toString());
+
+        ResponseEntity<String> result = same(HttpMethod.POST, "/header-key/a/path", headers, "{}");
+
+        assertThat(result.getStatusCode(), is(HttpStatus.OK));
+        assertThat(result.getBody(), is("{\"programmed\":true}"));
+    }
+
+    @Test
+    public void it_fails_an_unknown_response_the_same_way() {
+        ResponseEntity<String> result = same(HttpMethod.GET, "/unknown-key/response/rubbish", new HttpHeaders(), null);
+
+        assertThat(result.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        assertThat(result.getBody(), containsString("Unable to return the requested response"));
+    }
+
+    @Test
+    public void it_fails_a_bad_http_code_the_same_way() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(ReqbotHttpHeaders.HTTP_CODE, "999");
+
+        ResponseEntity<String> result = same(HttpMethod.GET, "/bad-code/a/path", headers, null);
+
+        assertThat(result.getStatusCode(), is(HttpStatus.INTERNAL_SERVER_ERROR));
+    }
+
+    @Test
+    public void it_goes_slow_the_same_way() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(ReqbotHttpHeaders.GO_SLOW, "300");
+
+        long start = System.nanoTime();
+        ResponseEntity<String> result = same(HttpMethod.GET, "/slow/response/" + PROGRAMMED.getUuid(), headers, null);
+
+        assertThat(result.getStatusCode(), is(HttpStatus.OK));
+        assertThat((System.nanoTime() - start) / 1000000, is(greaterThanOrEqualTo(600L)));
+    }
+
+    @Test
+    public void it_goes_slow_before_failing_the_same_way() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(ReqbotHttpHeaders.GO_SLOW, "300");
+
+        long start = System.nanoTime();
+        ResponseEntity<String> result = same(HttpMethod.GET, "/slow-failure/response/rubbish", headers, null);
+
+        assertThat(result.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        assertThat((System.nanoTime() - start) / 1000000, is(greaterThanOrEqualTo(600L)));
+    }
+
+    @Test
+    public void it_leaves_a_form_post_to_spring() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        long before = nativeCaptures();
+        ResponseEntity<String> result = same(HttpMethod.POST, "/form/a/path", headers, "name=value");
+
+        assertThat(result.getStatusCode(), is(HttpStatus.OK));
+        assertThat(captured(nativeHandler, "form").getBody(), is("name=value"));
+        assertThat(nativeCaptures(), is(before));
+    }
+
+    @Test
+    public void it_leaves_the_reserved_paths_to_spring() {
+        long before = nativeCaptures();
+
+        assertThat(same(HttpMethod.GET, "/version", new HttpHeaders(), null).getBody(), is("test"));
+        assertThat(call(spring, HttpMethod.GET, "/buckets", new HttpHeaders(), null).getStatusCode(),
+                is(call(nativeHandler, HttpMethod.GET, "/buckets", new HttpHeaders(), null).getStatusCode()));
+        assertThat(call(spring, HttpMethod.GET, "/metrics", new HttpHeaders(), null).getStatusCode(),
+                is(call(nativeHandler, HttpMethod.GET, "/metrics", new HttpHeaders(), null).getStatusCode()));
+
+        assertThat(nativeCaptures(), is(before));
+        for (String reserved : new String[]{"version", "buckets", "metrics"}) {
+            assertThat(nativeHandler.getBean(RequestRepo.class).getByBucket(reserved), is(empty()));
+        }
+    }
+
+    @Test
+    public void it_only_builds_its_routes_from_its_own_context() {
+        ApplicationContext own = mock(ApplicationContext.class);
+        ApplicationContext child = mock(ApplicationContext.class);
+        NativeCaptureHandler handler = new NativeCaptureHandler();
+        handler.setApplicationContext(own);
+
+        handler.onApplicationEvent(new ContextRefreshedEvent(child));
+
+        verifyZeroInteractions(own, child);
+    }
+
+    private static EmbeddedWebApplicationContext start(boolean nativeHandler) {
+        EmbeddedWebApplicationContext context = (EmbeddedWebApplicationContext) new SpringApplicationBuilder(ReqBot.class)
+                .run("--server.port=0",
+                        "--reqbot.storage=memory",
+                        "--reqbot.request.nativeHandler=" + nativeHandler,
+                        "--git.short.commit.id=test",
+                        "--spring.jmx.enabled=false");
+
+        context.getBean(ResponseRepo.class).save(PROGRAMMED);
+        return context;
+    }
+
+    // calls both, checks they agree on everything reqbot decides and hands back the native handler's answer
+    private ResponseEntity<String> same(HttpMethod method, String path, HttpHeaders headers, String body) {
+        ResponseEntity<String> viaSpring = call(spring, method, path, headers, body);
+        ResponseEntity<String> viaNative = call(nativeHandler, method, path, headers, body);
+
+        assertThat(viaNative.getStatusCode(), is(viaSpring.getStatusCode()));
+        assertThat(reqbotHeaders(viaNative), is(reqbotHeaders(viaSpring)));
+        assertThat(comparable(viaNative), is(comparable(viaSpring)));
+
+        String bucket = path.substring(1).split("[/?]")[0];
+        List<Request> springCaptures = spring.getBean(RequestRepo.class).getByBucket(bucket);
+        List<Request> nativeCaptures = nativeHandler.getBean(RequestRepo.class).getByBucket(bucket);
+        assertThat(nativeCaptures.size(), is(springCaptures.size()));
+        if (!springCaptures.isEmpty()) {
+            Request fromSpring = springCaptures.get(0);
+            Request fromNative = nativeCaptures.get(0);
+            assertThat(fromNative.getMethod(), is(fromSpring.getMethod()));
+            assertThat(fromNative.getPath(), is(fromSpring.getPath()));
+            assertThat(fromNative.getQueryParameters(), is(fromSpring.getQueryParameters()));
+            assertThat(fromNative.getBody(), is(fromSpring.getBody()));
+        }
+
+        return viaNative;
+    }
+
+    private ResponseEntity<String> call(EmbeddedWebApplicationContext context, HttpMethod method, String path,
+                                        HttpHeaders headers, String body) {
+        String url = "http://localhost:" + context.getEmbeddedServletContainer().getPort() + path;
+        return rest.exchange(url, method, new HttpEntity<>(body, headers), String.class);
+    }
+
+    private static Map<String, List<String>> reqbotHeaders(ResponseEntity<String> result) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        result.getHeaders().forEach((name, values) -> {
+            if (name.toUpperCase().startsWith("X-REQBOT-")) {
+                headers.put(name, values);
+            }
+        });
+        return headers;
+    }
+
+    // an error body carries the time it was sent, which is the only thing allowed to differ
+    private static String comparable(ResponseEntity<String> result) {
+        if (!result.getStatusCode().is4xxClientError() && !result.getStatusCode().is5xxServerError()) {
+            return result.getBody();
+        }
+
+        JsonObject error = new JsonParser().parse(result.getBody()).getAsJsonObject();
+        error.remove("timestamp");
+        return error.toString();
+    }
+
+    private static Request captured(EmbeddedWebApplicationContext context, String bucket) {
+        List<Request> captured = context.getBean(RequestRepo.class).getByBucket(bucket);
+        assertThat(captured, hasSize(1));
+        return captured.get(0);
+    }
+
+    // the handler's timer is only updated once the exchange is over, which can be just after the client has its answer
+    private static void awaitNativeCaptures(long count) throws InterruptedException {
+        for (int i = 0; i < 100 && nativeCaptures() < count; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(nativeCaptures(), is(count));
+    }
+
+    private static long nativeCaptures() {
+        LatencyTimer timer = nativeHandler.getBean(ReqbotMetrics.class).timer(ReqbotMetrics.ENDPOINT_PREFIX + "nativeCapture");
+        return timer.getCount();
+    }
+}
@@ -0,0 +1,178 @@
+package com.losd.reqbot.jfr;
+
+import com.losd.reqbot.async.DelayScheduler;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.controller.ApiController;
+import com.losd.reqbot.controller.Capturer;
+import com.losd.reqbot.metrics.ReqbotMetrics;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import com.losd.reqbot.repository.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class FlightEventsTest {
+    private Recording recording;
+
+    @Before
+    public void setup() {
+        assumeTrue(Flight.AVAILABLE);
+
+        recording = new Recording();
+        recording.enable("reqbot.Capture");
+        recording.enable("reqbot.ResponseLookup");
+        recording.enable("reqbot.Serialization");
+        recording.enable("reqbot.GoSlow");
+        recording.start();
+    }
+
+    @After
+    public void teardown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Test
+    public void it_records_a_capture() throws
+            Exception {
+        Capturer capturer = new Capturer();
+        ReflectionTestUtils.setField(capturer, "requestRepo", mock(RequestRepo.class));
+        ReflectionTestUtils.setField(capturer, "requestSettings", new RequestSettings());
+        ReflectionTestUtils.setField(capturer, "metrics", new ReqbotMetrics());
+
+        ApiController controller = new ApiController();
+        ReflectionTestUtils.setField(controller, "capturer", capturer);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        mockMvc.perform(post("/flight/a/path").content("héllo")).andExpect(status().isOk());
+
+        RecordedEvent capture = single(events(), "reqbot.Capture");
+        assertThat(capture.getString("bucket"), is("flight"));
+        assertThat(capture.getString("method"), is("POST"));
+        assertThat(capture.getLong("bodyBytes"), is(6L));
+        assertThat(capture.getInt("status"), is(200));
+    }
+
+    @Test
+    public void it_records_where_a_response_was_found() throws
+            Exception {
+        Response response = new Response.Builder().body("body").build();
+        String uuid = response.getUuid().toString();
+        ResponseRepo store = mock(ResponseRepo.class);
+        when(store.get(uuid)).thenReturn(response);
+        CachingResponseRepo repo = new CachingResponseRepo(store, new ResponseCache(10, 1024 * 1024));
+
+        repo.get(uuid);
+        repo.get(uuid);
+
+        RecordedEvent lookup = single(events(), "reqbot.ResponseLookup");
+        assertThat(lookup.getString("responseKey"), is(uuid));
+        assertThat(lookup.getString("source"), is(ResponseLookupEvent.CACHE));
+        assertThat(lookup.getBoolean("found"), is(true));
+    }
+
+    @Test
+    public void it_records_each_serialization_once() throws
+            Exception {
+        StorageCodec codec = new StorageCodec(StorageCodec.Format.BINARY);
+        Request request = new Request.Builder().bucket("flight").method("GET").build();
+
+        byte[] stored = codec.encode(request);
+        codec.requestJson(stored);
+
+        List<RecordedEvent> serializations = events().stream()
+                .filter(event -> event.getEventType().getName().equals("reqbot.Serialization"))
+                .collect(Collectors.toList());
+
+        assertThat(serializations.stream().map(event -> event.getString("operation")).collect(Collectors.toList()),
+                contains(SerializationEvent.ENCODE, SerializationEvent.JSON));
+        assertThat(serializations.get(0).getString("format"), is("binary"));
+        assertThat(serializations.get(0).getLong("storedBytes"), is((long) stored.length));
+    }
+
+    @Test
+    public void it_records_a_go_slow_wait() throws
+            Exception {
+        DelayScheduler scheduler = new DelayScheduler(1);
+
+        DeferredResult<String> result = scheduler.complete("done", 20);
+        long start = System.nanoTime();
+        while (!result.hasResult()) {
+            assertThat(System.nanoTime() - start, is(lessThan(TimeUnit.SECONDS.toNanos(5))));
+            Thread.sleep(5);
+        }
+        scheduler.destroy();
+
+        RecordedEvent goSlow = single(events(), "reqbot.GoSlow");
+        assertThat(goSlow.getDuration().toMillis(), is(greaterThanOrEqualTo(20L)));
+        assertThat(goSlow.getLong("requestedMillis"), is(20L));
+    }
+
+    private List<RecordedEvent> events() throws
+            Exception {
+        recording.stop();
+        Path file = Files.createTempFile("reqbot", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+
+        assertThat(named, hasSize(1));
+        return named.get(0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.losd.reqbot.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class LatencyTimerTest {
+    @Test
+    public void it_puts_every_value_in_a_bucket_that_holds_it() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 100, 1000, 123456, Long.MAX_VALUE / 2, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int bucket = LatencyTimer.bucket(value);
+            assertThat(LatencyTimer.highest(bucket), is(greaterThanOrEqualTo(value)));
+            assertThat(bucket == 0 || LatencyTimer.highest(bucket - 1) < value, is(true));
+        }
+    }
+
+    @Test
+    public void it_reports_percentiles_to_within_an_eighth() {
+        LatencyTimer timer = new LatencyTimer();
+        for (long micros = 1; micros <= 10000; micros++) {
+            timer.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertThat(timer.getCount(), is(10000L));
+        assertThat(timer.getMaxMicros(), is(10000L));
+        assertThat(timer.getMeanMicros(), is(closeTo(5000.5, 0.001)));
+        assertThat((double) timer.getPercentileMicros(50), is(closeTo(5000, 5000 / 8.0)));
+        assertThat((double) timer.getPercentileMicros(99), is(closeTo(9900, 9900 / 8.0)));
+        assertThat(timer.getPercentileMicros(100), is(10000L));
+    }
+
+    @Test
+    public void it_reports_nothing_before_anything_is_recorded() {
+        LatencyTimer timer = new LatencyTimer();
+
+        assertThat(timer.getCount(), is(0L));
+        assertThat(timer.getPercentileMicros(99), is(0L));
+        assertThat(timer.getMeanMicros(), is(0.0));
+        assertThat(timer.getRatePerSecond(), is(0.0));
+    }
+
+    @Test
+    public void it_does_not_lose_counts_when_recorded_from_many_threads() throws
+            Exception {
+        LatencyTimer timer = new LatencyTimer();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        for (int i = 0; i < 4; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 25000; j++) {
+                    timer.record(j * 1000L);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+
+        assertThat(timer.getCount(), is(100000L));
+        assertThat(timer.getMaxMicros(), is(24999L));
+        assertThat(timer.getRatePerSecond(), is(greaterThan(0.0)));
+    }
+
+    @Test
+    public void it_names_each_metric_after_the_timer() {
+        ReqbotMetrics metrics = new ReqbotMetrics();
+        metrics.timer("reqbot.test").record(1000);
+
+        assertThat(metrics.timer("reqbot.test"), is(sameInstance(metrics.timer("reqbot.test"))));
+        assertThat(metrics.metrics().stream().map(metric -> metric.getName()).toArray(),
+                hasItemInArray("reqbot.test.p99Micros"));
+    }
+}
@@ -0,0 +1,163 @@
+package com.losd.reqbot.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ModelAllocationTest {
+    private static final int WARM_UP = 200000;
+    private static final int MEASURED = 100000;
+
+    private Map<String, String> headers = new LinkedHashMap<>();
+    private Map<String, String> queryParameters = new LinkedHashMap<>();
+    private Object sink;
+
+    @Before
+    public void setup() {
+        // the same shape spring hands the controller
+        headers.put("Accept", "*/*");
+        headers.put("User-Agent", "curl/7.43.0");
+        headers.put("X-Trace", "abc");
+        headers.put("Host", "localhost");
+
+        queryParameters.put("one", "1");
+        queryParameters.put("two", "2");
+        queryParameters.put("three", "3");
+    }
+
+    @Test
+    public void it_hands_out_the_same_frozen_instance_every_time() {
+        Request request = capture();
+        Response response = new Response.Builder().addHeader("Content-Type", "text/plain").tags(Arrays.asList("a", "b")).build();
+
+        assertThat(request.getHeaders(), is(sameInstance(request.getHeaders())));
+        assertThat(request.getQueryParameters(), is(sameInstance(request.getQueryParameters())));
+        assertThat(response.getHeaders(), is(sameInstance(response.getHeaders())));
+        assertThat(response.getTags(), is(sameInstance(response.getTags())));
+        assertThat(request.getHeaders(), is(instanceOf(ImmutableMap.class)));
+    }
+
+    @Test
+    public void it_freezes_what_it_reads_back() {
+        Gson gson = new Gson();
+        Request read = gson.fromJson(gson.toJson(capture()), Request.class);
+
+        assertThat(read.getHeaders(), is(instanceOf(ImmutableMap.class)));
+        assertThat(read.getHeaders(), is(sameInstance(read.getHeaders())));
+        assertThat(read.getHeaders(), is(equalTo(headers)));
+    }
+
+    @Test
+    public void it_does_not_copy_a_map_that_is_already_frozen() {
+        Map<String, String> frozen = ImmutableMap.of("Content-Type", "text/plain");
+
+        assertThat(new Response.Builder().headers(frozen).build().getHeaders(), is(sameInstance(frozen)));
+        assertThat(new Request.Builder().headers(frozen).build().getHeaders(), is(sameInstance(frozen)));
+    }
+
+    @Test
+    public void it_copies_a_map_before_adding_to_it() {
+        Map<String, String> given = new LinkedHashMap<>(headers);
+        Request request = new Request.Builder().headers(given).addHeader("X-Extra", "1").build();
+
+        assertThat(given, not(hasKey("X-Extra")));
+        assertThat(request.getHeaders(), hasEntry("X-Extra", "1"));
+        assertThat(request.getHeaders().size(), is(headers.size() + 1));
+    }
+
+    // measured against the same capture plus the copies the models used to make, so it doesn't depend on how much the
+    // jvm running it allocates for each object. a capture comes to about a third of that
+    @Test
+    public void a_capture_allocates_less_than_half_what_copying_on_every_read_did() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        long frozen = allocatedPerCall(threads, () -> read(capture()));
+        long copying = allocatedPerCall(threads, this::captureCopying);
+
+        assertThat(frozen * 2, is(lessThanOrEqualTo(copying)));
+    }
+
+    private long allocatedPerCall(com.sun.management.ThreadMXBean threads, Supplier<Object> call) {
+        for (int i = 0; i < WARM_UP; i++) {
+            sink = call.get();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED; i++) {
+            sink = call.get();
+        }
+        return (threads.getThreadAllocatedBytes(thread) - before) / MEASURED;
+    }
+
+    private Request capture() {
+        return new Request.Builder()
+                .bucket("bucket")
+                .headers(headers)
+                .queryParameters(queryParameters)
+                .method("GET")
+                .path("/bucket/a/path")
+                .build();
+    }
+
+    // the getters are called more than once on the way through the controller and the store
+    private Object read(Request request) {
+        request.getHeaders();
+        request.getQueryParameters();
+        request.getHeaders();
+        return request.getQueryParameters();
+    }
+
+    // the builder used to keep its own copy of each map and every getter handed out another one
+    private Object captureCopying() {
+        sink = capture();
+        Map<String, String> heldHeaders = new HashMap<>(headers);
+        Map<String, String> heldQueryParameters = new HashMap<>(queryParameters);
+
+        sink = ImmutableMap.copyOf(heldHeaders);
+        sink = ImmutableMap.copyOf(heldQueryParameters);
+        sink = ImmutableMap.copyOf(heldHeaders);
+        return ImmutableMap.copyOf(heldQueryParameters);
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.losd.reqbot.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class TimeOrderedIdGeneratorTest {
+    private TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+
+    @Test
+    public void it_makes_version_7_uuids_from_the_current_time() {
+        long before = System.currentTimeMillis();
+        UUID id = generator.next();
+        long after = System.currentTimeMillis();
+
+        assertThat(id.version(), is(7));
+        assertThat(id.variant(), is(2));
+        assertThat(id.getMostSignificantBits() >>> 16, is(both(greaterThanOrEqualTo(before)).and(lessThanOrEqualTo(after + 1))));
+    }
+
+    @Test
+    public void it_makes_ids_that_always_go_up_on_one_thread() {
+        // more than the sequence holds, so some of them have to borrow the next millisecond
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            ids.add(generator.next());
+        }
+
+        for (int i = 1; i < ids.size(); i++) {
+            assertThat(ids.get(i), is(greaterThan(ids.get(i - 1))));
+            assertThat(ids.get(i).toString(), is(greaterThan(ids.get(i - 1).toString())));
+        }
+    }
+
+    @Test
+    public void it_makes_different_ids_on_different_threads() throws Exception {
+        Set<UUID> ids = new HashSet<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                List<UUID> made = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) {
+                    made.add(generator.next());
+                }
+                synchronized (ids) {
+                    ids.addAll(made);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertThat(ids, hasSize(20000));
+    }
+
+    @Test
+    public void it_orders_ids_by_when_they_were_made() throws Exception {
+        UUID first = generator.next();
+        Thread.sleep(2);
+
+        UUID[] second = new UUID[1];
+        Thread other = new Thread(() -> second[0] = generator.next());
+        other.start();
+        other.join();
+
+        assertThat(second[0], is(greaterThan(first)));
+    }
+}
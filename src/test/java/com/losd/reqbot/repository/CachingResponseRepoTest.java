@@ -0,0 +1,148 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.model.Response;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class CachingResponseRepoTest {
+    @Mock
+    ResponseRepo delegate;
+
+    ResponseCache cache;
+
+    CachingResponseRepo repo;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        cache = new ResponseCache(3, 1024 * 1024);
+        repo = new CachingResponseRepo(delegate, cache);
+    }
+
+    @Test
+    public void it_only_goes_to_the_underlying_repo_once() {
+        Response response = new Response.Builder().addHeader("h", "v").body("body").build();
+        String uuid = response.getUuid().toString();
+        when(delegate.get(uuid)).thenReturn(response);
+
+        assertThat(repo.get(uuid), is(sameInstance(response)));
+        assertThat(repo.get(uuid), is(sameInstance(response)));
+        assertThat(repo.get(uuid), is(sameInstance(response)));
+
+        verify(delegate, times(1)).get(uuid);
+        assertThat(cache.hits(), is(2L));
+        assertThat(cache.misses(), is(1L));
+    }
+
+    @Test
+    public void it_does_not_cache_responses_that_are_not_found() {
+        when(delegate.get("rubbish")).thenReturn(null);
+
+        assertThat(repo.get("rubbish"), is(nullValue()));
+        assertThat(repo.get("rubbish"), is(nullValue()));
+
+        verify(delegate, times(2)).get("rubbish");
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void it_caches_saved_responses() {
+        Response response = new Response.Builder().body("body").build();
+
+        repo.save(response);
+
+        assertThat(repo.get(response.getUuid().toString()), is(sameInstance(response)));
+        verify(delegate, times(1)).save(response);
+        verify(delegate, never()).get(anyString());
+    }
+
+    @Test
+    public void it_evicts_the_least_recently_used_response() {
+        Response a = new Response.Builder().body("a").build();
+        Response b = new Response.Builder().body("b").build();
+        Response c = new Response.Builder().body("c").build();
+        Response d = new Response.Builder().body("d").build();
+
+        repo.save(a);
+        repo.save(b);
+        repo.save(c);
+
+        // touching a makes b the oldest
+        repo.get(a.getUuid().toString());
+        repo.save(d);
+
+        assertThat(cache.size(), is(3));
+        assertThat(cache.evictions(), is(1L));
+        assertThat(cache.get(a.getUuid().toString()), is(sameInstance(a)));
+        assertThat(cache.get(b.getUuid().toString()), is(nullValue()));
+    }
+
+    @Test
+    public void it_keeps_under_the_byte_limit() {
+        Response small = new Response.Builder().body("small").build();
+        Response big = new Response.Builder().body(new String(new char[2000])).build();
+
+        long limit = ResponseCache.weigh(big.getUuid().toString(), big) + ResponseCache.weigh(small.getUuid().toString(), small) - 1;
+        cache = new ResponseCache(100, limit);
+        repo = new CachingResponseRepo(delegate, cache);
+
+        repo.save(small);
+        repo.save(big);
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.bytes(), is(lessThanOrEqualTo(limit)));
+        assertThat(cache.get(big.getUuid().toString()), is(sameInstance(big)));
+    }
+
+    @Test
+    public void it_does_not_cache_a_response_bigger_than_the_cache() {
+        cache = new ResponseCache(100, 10);
+        repo = new CachingResponseRepo(delegate, cache);
+
+        repo.save(new Response.Builder().body("body").build());
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void it_only_counts_a_response_saved_twice_once() {
+        Response response = new Response.Builder().body("body").build();
+
+        repo.save(response);
+        repo.save(response);
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.bytes(), is(ResponseCache.weigh(response.getUuid().toString(), response)));
+        assertThat(cache.evictions(), is(0L));
+    }
+}
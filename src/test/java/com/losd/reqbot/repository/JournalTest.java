@@ -0,0 +1,227 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.JournalSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JournalSettings settings;
+    private Path directory;
+    private LatestIndex index;
+    private Journal journal;
+
+    @Before
+    public void setup() throws IOException {
+        settings = new JournalSettings();
+        settings.setSegmentBytes(1024);
+        settings.setCompactIntervalMillis(0);
+
+        directory = folder.getRoot().toPath();
+        reopen();
+    }
+
+    @After
+    public void teardown() {
+        journal.close();
+    }
+
+    @Test
+    public void it_reads_back_what_was_appended() {
+        Journal.Location location = journal.append("key", bytes("a value with ünïcode in it"));
+
+        assertThat(new String(location.value(), StandardCharsets.UTF_8), is(equalTo("a value with ünïcode in it")));
+        assertThat(index.value("key"), is(equalTo("a value with ünïcode in it")));
+    }
+
+    @Test
+    public void it_replays_everything_when_it_is_reopened() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            journal.append("key" + (i % 10), bytes("value" + i));
+        }
+
+        reopen();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(index.value("key" + i), is(equalTo("value" + (90 + i))));
+        }
+
+        journal.append("key0", bytes("after the restart"));
+        reopen();
+
+        assertThat(index.value("key0"), is(equalTo("after the restart")));
+    }
+
+    @Test
+    public void it_rolls_on_to_a_new_segment_when_one_fills_up() {
+        for (int i = 0; i < 100; i++) {
+            journal.append("key" + i, bytes("value" + i));
+        }
+
+        assertThat(journal.segmentCount(), is(greaterThan(1)));
+        assertThat(index.value("key0"), is(equalTo("value0")));
+        assertThat(index.value("key99"), is(equalTo("value99")));
+    }
+
+    @Test
+    public void it_makes_room_for_a_record_bigger_than_a_segment() throws IOException {
+        String big = new String(new char[4096]).replace('\0', 'x');
+        journal.append("big", bytes(big));
+        journal.append("small", bytes("small"));
+
+        reopen();
+
+        assertThat(index.value("big"), is(equalTo(big)));
+        assertThat(index.value("small"), is(equalTo("small")));
+    }
+
+    @Test
+    public void it_ignores_a_record_that_was_only_half_written() throws IOException {
+        journal.append("key", bytes("good"));
+        Journal.Location torn = journal.append("key", bytes("torn"));
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(0).toFile(), "rw")) {
+            file.seek(torn.valueOffset);
+            file.write('x');
+        }
+
+        reopen();
+        assertThat(index.value("key"), is(equalTo("good")));
+
+        journal.append("key", bytes("replaced"));
+        reopen();
+        assertThat(index.value("key"), is(equalTo("replaced")));
+    }
+
+    @Test
+    public void it_compacts_segments_that_are_mostly_dead() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            journal.append("key" + (i % 5), bytes("value" + i));
+        }
+
+        int before = journal.segmentCount();
+        journal.compact();
+
+        assertThat(journal.segmentCount(), is(lessThan(before)));
+        for (int i = 0; i < 5; i++) {
+            assertThat(index.value("key" + i), is(equalTo("value" + (995 + i))));
+        }
+
+        reopen();
+
+        assertThat(index.locations.keySet(), hasSize(5));
+        for (int i = 0; i < 5; i++) {
+            assertThat(index.value("key" + i), is(equalTo("value" + (995 + i))));
+        }
+    }
+
+    @Test
+    public void it_keeps_live_records_when_it_compacts() throws IOException {
+        journal.append("kept", bytes("the first value"));
+        for (int i = 0; i < 1000; i++) {
+            journal.append("churn", bytes("value" + i));
+        }
+
+        journal.compact();
+        reopen();
+
+        assertThat(index.value("kept"), is(equalTo("the first value")));
+        assertThat(index.value("churn"), is(equalTo("value999")));
+    }
+
+    @Test
+    public void it_throws_away_a_compaction_that_did_not_finish() throws IOException {
+        journal.append("key", bytes("value"));
+        journal.close();
+
+        Files.write(directory.resolve(segmentFile(0).getFileName() + ".compacting"), new byte[]{1, 2, 3});
+        reopen();
+
+        assertThat(index.value("key"), is(equalTo("value")));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(file -> file.toString().endsWith(".compacting")).count(), is(0L));
+        }
+    }
+
+    private void reopen() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+
+        index = new LatestIndex();
+        journal = Journal.open(directory, settings, index);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Path segmentFile(long id) {
+        return directory.resolve(String.format("%020d.journal", id));
+    }
+
+    // keeps the newest record for each key, like the response repo does
+    private static class LatestIndex implements Journal.Index {
+        final Map<String, Journal.Location> locations = new HashMap<>();
+
+        String value(String key) {
+            return new String(locations.get(key).value(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public synchronized Journal.Location add(String key, Journal.Location location) {
+            return locations.put(key, location);
+        }
+
+        @Override
+        public synchronized boolean contains(String key, Journal.Location location) {
+            return location.equals(locations.get(key));
+        }
+
+        @Override
+        public synchronized boolean replace(String key, Journal.Location from, Journal.Location to) {
+            return locations.replace(key, from, to);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.losd.reqbot.repository;
 
+import com.losd.reqbot.config.CompressionSettings;
 import com.losd.reqbot.config.RedisSettings;
 import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.config.ResponseSettings;
+import com.losd.reqbot.metrics.ReqbotMetrics;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -53,4 +56,19 @@ public class RedisConfiguration {
 
         return settings;
     }
+
+    @Bean
+    ResponseSettings responseSettings() {
+        return new ResponseSettings();
+    }
+
+    @Bean
+    CompressionSettings compressionSettings() {
+        return new CompressionSettings();
+    }
+
+    @Bean
+    ReqbotMetrics reqbotMetrics() {
+        return new ReqbotMetrics();
+    }
 }
@@ -0,0 +1,233 @@
+package com.losd.reqbot.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.config.JournalSettings;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class RequestJournalRepoTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RequestSettings settings;
+    private JournalSettings journalSettings;
+    private RequestJournalRepo repo;
+
+    private Gson rawGson = new GsonBuilder().disableHtmlEscaping().create();
+
+    @Before
+    public void setup() throws IOException {
+        settings = new RequestSettings();
+        settings.setQueueSize(3);
+
+        journalSettings = new JournalSettings();
+        journalSettings.setDirectory(folder.getRoot().getPath());
+        journalSettings.setSegmentBytes(4096);
+        journalSettings.setCompactIntervalMillis(0);
+
+        repo = open();
+    }
+
+    @After
+    public void teardown() {
+        repo.destroy();
+    }
+
+    @Test
+    public void it_stops_a_bucket_getting_too_big() {
+        List<UUID> saved = new ArrayList<>();
+
+        for (int i = 1; i < 10; i++) {
+            Request request = buildRequest("a");
+            saved.add(0, request.getUuid());
+            repo.save(request);
+
+            assertThat(repo.getByBucket("a"), hasSize(Math.min(i, 3)));
+        }
+
+        assertThat(uuids(repo.getByBucket("a")), is(equalTo(saved.subList(0, 3))));
+    }
+
+    @Test
+    public void it_keeps_the_newest_requests_across_a_restart() throws IOException {
+        List<UUID> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Request request = buildRequest(i % 2 == 0 ? "even" : "odd");
+            repo.save(request);
+
+            if (i % 2 == 0) {
+                saved.add(0, request.getUuid());
+            }
+        }
+
+        repo.destroy();
+        repo = open();
+
+        assertThat(repo.getBuckets(), contains("even", "odd"));
+        assertThat(uuids(repo.getByBucket("even")), is(equalTo(saved.subList(0, 3))));
+    }
+
+    @Test
+    public void it_streams_the_same_json_as_the_redis_repo() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(buildRequest("a"));
+            repo.save(requests.get(i));
+        }
+
+        List<String> page = new ArrayList<>();
+        List<Long> cursors = new ArrayList<>();
+        repo.streamRawByBucket("a", 0, 2, new PageConsumer() {
+            @Override
+            public void accept(List<String> chunk) {
+                page.addAll(chunk);
+            }
+
+            @Override
+            public void nextCursor(long cursor) {
+                cursors.add(cursor);
+            }
+        });
+
+        assertThat(page, contains(rawGson.toJson(requests.get(2)), rawGson.toJson(requests.get(1))));
+        assertThat(cursors, contains(2L));
+    }
+
+    @Test
+    public void it_compacts_away_requests_that_have_fallen_out_of_their_bucket() throws IOException {
+        List<UUID> saved = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Request request = buildRequest("a");
+            saved.add(0, request.getUuid());
+            repo.save(request);
+        }
+
+        int before = repo.segmentCount();
+        repo.compact();
+
+        assertThat(repo.segmentCount(), is(lessThan(before)));
+        assertThat(uuids(repo.getByBucket("a")), is(equalTo(saved.subList(0, 3))));
+
+        repo.destroy();
+        repo = open();
+
+        assertThat(uuids(repo.getByBucket("a")), is(equalTo(saved.subList(0, 3))));
+    }
+
+    @Test
+    public void it_keeps_the_newest_requests_with_concurrent_writers_and_compaction() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 5000; i++) {
+            writers.submit(() -> repo.save(buildRequest("a")));
+        }
+        for (int i = 0; i < 5; i++) {
+            writers.submit(() -> {
+                repo.compact();
+                return null;
+            });
+        }
+
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+        List<UUID> newest = uuids(repo.getByBucket("a"));
+        assertThat(newest, hasSize(3));
+
+        repo.destroy();
+        repo = open();
+
+        assertThat(uuids(repo.getByBucket("a")), is(equalTo(newest)));
+    }
+
+    private RequestJournalRepo open() throws IOException {
+        RequestJournalRepo journalRepo = new RequestJournalRepo();
+        journalRepo.settings = settings;
+        journalRepo.journalSettings = journalSettings;
+        journalRepo.codec = new StorageCodec(StorageCodec.Format.BINARY);
+        journalRepo.afterPropertiesSet();
+
+        return journalRepo;
+    }
+
+    private static List<UUID> uuids(List<Request> requests) {
+        List<UUID> result = new ArrayList<>();
+        requests.forEach(request -> result.add(request.getUuid()));
+
+        return result;
+    }
+
+    @Test
+    public void it_hands_back_only_what_was_captured_after_the_last_request_seen() {
+        List<Request> saved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Request request = buildRequest("a");
+            saved.add(request);
+            repo.save(request);
+        }
+
+        assertThat(rawUuids(repo.getRawByBucketAfter("a", saved.get(0).getUuid().toString())),
+                contains(saved.get(2).getUuid().toString(), saved.get(1).getUuid().toString()));
+        assertThat(repo.getRawByBucketAfter("a", saved.get(2).getUuid().toString()), is(empty()));
+        assertThat(repo.getRawByBucketAfter("a", null), hasSize(3));
+
+        // the last one seen has aged out of the bucket, so everything in it is new
+        assertThat(repo.getRawByBucketAfter("a", UUID.randomUUID().toString()), hasSize(3));
+        assertThat(repo.getRawByBucketAfter("nothing-here", null), is(empty()));
+    }
+
+    private List<String> rawUuids(List<String> json) {
+        List<String> uuids = new ArrayList<>();
+        json.forEach(request -> uuids.add(new JsonParser().parse(request).getAsJsonObject().get("uuid").getAsString()));
+        return uuids;
+    }
+
+    private Request buildRequest(String bucket) {
+        return new Request.Builder().bucket(bucket)
+                .addHeader("Content-Type", "text/plain")
+                .body("body/n")
+                .method("POST")
+                .build();
+    }
+}
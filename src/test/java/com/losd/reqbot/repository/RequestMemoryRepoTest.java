@@ -0,0 +1,214 @@
+package com.losd.reqbot.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import org.apache.commons.lang.RandomStringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class RequestMemoryRepoTest {
+    RequestMemoryRepo repo;
+
+    private Gson rawGson = new GsonBuilder().disableHtmlEscaping().create();
+
+    private String bucket;
+
+    @Before
+    public void setup() {
+        RequestSettings settings = new RequestSettings();
+        settings.setQueueSize(3);
+
+        repo = new RequestMemoryRepo();
+        repo.settings = settings;
+
+        bucket = RandomStringUtils.randomAlphabetic(10);
+    }
+
+    @Test
+    public void it_saves() {
+        Request request = buildRequest(bucket);
+        repo.save(request);
+
+        List<Request> result = repo.getByBucket(bucket);
+
+        assertThat(result, hasSize(1));
+        assertThat(result.get(0).getUuid(), is(equalTo(request.getUuid())));
+        assertThat(result.get(0).getHeaders(), is(equalTo(request.getHeaders())));
+        assertThat(result.get(0).getBody(), is(equalTo(request.getBody())));
+    }
+
+    @Test
+    public void it_stops_a_bucket_getting_too_big() {
+        List<UUID> saved = new ArrayList<>();
+
+        for (int i = 1; i < 10; i++) {
+            Request request = buildRequest(bucket);
+            saved.add(0, request.getUuid());
+            repo.save(request);
+
+            assertThat(repo.getByBucket(bucket), hasSize(Math.min(i, 3)));
+        }
+
+        List<UUID> resultUuids = new ArrayList<>();
+        repo.getByBucket(bucket).forEach(request -> resultUuids.add(request.getUuid()));
+
+        assertThat(resultUuids, is(equalTo(saved.subList(0, 3))));
+    }
+
+    @Test
+    public void it_saves_all_and_keeps_the_newest() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(buildRequest(bucket));
+        }
+
+        repo.saveAll(requests);
+
+        List<UUID> resultUuids = new ArrayList<>();
+        repo.getByBucket(bucket).forEach(request -> resultUuids.add(request.getUuid()));
+
+        assertThat(resultUuids, contains(requests.get(4).getUuid(), requests.get(3).getUuid(), requests.get(2).getUuid()));
+    }
+
+    @Test
+    public void it_handles_a_bucket_that_does_not_exist() {
+        List<String> result = new ArrayList<>();
+        repo.streamRawByBucket(bucket, 0, 10, result::addAll);
+
+        assertThat(repo.getByBucket(bucket), hasSize(0));
+        assertThat(result, hasSize(0));
+    }
+
+    @Test
+    public void it_streams_a_bucket_a_page_at_a_time() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(buildRequest(bucket));
+            repo.save(requests.get(i));
+        }
+
+        List<String> first = new ArrayList<>();
+        List<Long> cursors = new ArrayList<>();
+        repo.streamRawByBucket(bucket, 0, 2, page(first, cursors));
+
+        assertThat(first, contains(rawGson.toJson(requests.get(2)), rawGson.toJson(requests.get(1))));
+        assertThat(cursors, contains(2L));
+
+        List<String> second = new ArrayList<>();
+        repo.streamRawByBucket(bucket, 2, 2, page(second, cursors));
+
+        assertThat(second, contains(rawGson.toJson(requests.get(0))));
+        assertThat(cursors, contains(2L));
+    }
+
+    @Test
+    public void it_can_get_a_set_containing_all_of_the_buckets() {
+        repo.save(buildRequest("d"));
+        repo.save(buildRequest("b"));
+        repo.save(buildRequest("c"));
+        repo.save(buildRequest("a"));
+        repo.save(buildRequest("a"));
+
+        assertThat(repo.getBuckets(), contains("a", "b", "c", "d"));
+        assertThat(repo.getBuckets(1, 2), contains("b", "c"));
+        assertThat(repo.getBuckets(3, 5), contains("d"));
+    }
+
+    @Test
+    public void it_keeps_the_newest_requests_with_concurrent_writers() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 10000; i++) {
+            writers.submit(() -> repo.save(buildRequest(bucket)));
+        }
+
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+        assertThat(repo.getByBucket(bucket), hasSize(3));
+    }
+
+    private PageConsumer page(List<String> elements, List<Long> cursors) {
+        return new PageConsumer() {
+            @Override
+            public void accept(List<String> chunk) {
+                elements.addAll(chunk);
+            }
+
+            @Override
+            public void nextCursor(long cursor) {
+                cursors.add(cursor);
+            }
+        };
+    }
+
+    @Test
+    public void it_hands_back_only_what_was_captured_after_the_last_request_seen() {
+        List<Request> saved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Request request = buildRequest(bucket);
+            saved.add(request);
+            repo.save(request);
+        }
+
+        assertThat(rawUuids(repo.getRawByBucketAfter(bucket, saved.get(0).getUuid().toString())),
+                contains(saved.get(2).getUuid().toString(), saved.get(1).getUuid().toString()));
+        assertThat(repo.getRawByBucketAfter(bucket, saved.get(2).getUuid().toString()), is(empty()));
+        assertThat(repo.getRawByBucketAfter(bucket, null), hasSize(3));
+
+        // the last one seen has aged out of the bucket, so everything in it is new
+        assertThat(repo.getRawByBucketAfter(bucket, UUID.randomUUID().toString()), hasSize(3));
+        assertThat(repo.getRawByBucketAfter("nothing-here", null), is(empty()));
+    }
+
+    private List<String> rawUuids(List<String> json) {
+        List<String> uuids = new ArrayList<>();
+        json.forEach(request -> uuids.add(new JsonParser().parse(request).getAsJsonObject().get("uuid").getAsString()));
+        return uuids;
+    }
+
+    private Request buildRequest(String bucket) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RandomStringUtils.randomAlphabetic(10), RandomStringUtils.randomAlphabetic(10));
+
+        return new Request.Builder().bucket(bucket)
+                .headers(headers)
+                .body("body/n")
+                .method("POST")
+                .build();
+    }
+}
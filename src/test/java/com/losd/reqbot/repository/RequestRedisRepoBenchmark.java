@@ -0,0 +1,147 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.test.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Category(Benchmark.class)
+public class RequestRedisRepoBenchmark {
+    private JedisConnectionFactory factory;
+    private StringRedisTemplate template;
+    private RequestRedisRepo repo;
+
+    @Before
+    public void setup() {
+        String host = System.getenv("REQBOT_REDIS_HOST");
+        String port = System.getenv("REQBOT_REDIS_PORT");
+
+        factory = new JedisConnectionFactory();
+        factory.setHostName(host == null ? "localhost" : host);
+        factory.setPort(port == null ? 6379 : Integer.parseInt(port));
+        factory.afterPropertiesSet();
+
+        template = new StringRedisTemplate(factory);
+        template.afterPropertiesSet();
+        template.delete(template.keys("*"));
+
+        RequestSettings settings = new RequestSettings();
+        settings.setQueueSize(10000);
+
+        repo = new RequestRedisRepo();
+        repo.settings = settings;
+        repo.template = template;
+        repo.codec = new StorageCodec(StorageCodec.Format.JSON);
+    }
+
+    @After
+    public void teardown() {
+        template.delete(template.keys("*"));
+        factory.destroy();
+    }
+
+    @Test
+    public void get_by_bucket() {
+        for (int size : new int[]{10, 100, 10000}) {
+            String bucket = "bench" + size;
+            List<Request> requests = new ArrayList<>();
+
+            for (int i = 0; i < size; i++) {
+                requests.add(new Request.Builder()
+                        .bucket(bucket)
+                        .method("POST")
+                        .path("/" + bucket + "/some/path")
+                        .addHeader("Content-Type", "application/json")
+                        .addHeader("User-Agent", "benchmark")
+                        .addQueryParameters("a", "1")
+                        .body("{\"id\":" + i + ",\"name\":\"a request body of a typical size\"}")
+                        .build());
+            }
+            repo.saveAll(requests);
+
+            int iterations = Math.max(10, 20000 / size);
+            for (int i = 0; i < iterations; i++) {
+                assertThat(repo.getByBucket(bucket), hasSize(size));
+            }
+
+            long[] latencies = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                repo.getByBucket(bucket);
+                latencies[i] = System.nanoTime() - start;
+            }
+
+            Arrays.sort(latencies);
+            System.out.printf("getByBucket %5d entries: p50=%9.3fms p99=%9.3fms (%d runs)%n", size,
+                    latencies[iterations / 2] / 1e6, latencies[(int) Math.ceil(iterations * 0.99) - 1] / 1e6, iterations);
+        }
+    }
+
+    @Test
+    public void save() {
+        RequestSettings settings = new RequestSettings();
+        settings.setQueueSize(10);
+        repo.settings = settings;
+
+        int iterations = 20000;
+        long[] latencies = new long[iterations];
+
+        for (int i = 0; i < iterations * 2; i++) {
+            Request request = new Request.Builder()
+                    .bucket("bench")
+                    .method("POST")
+                    .path("/bench/some/path")
+                    .addHeader("Content-Type", "application/json")
+                    .body("{\"id\":" + i + ",\"name\":\"a request body of a typical size\"}")
+                    .build();
+
+            // the first half fills the bucket and warms up
+            long start = System.nanoTime();
+            repo.save(request);
+            if (i >= iterations) {
+                latencies[i - iterations] = System.nanoTime() - start;
+            }
+        }
+
+        assertThat(template.keys(RequestRedisRepo.REQUEST_KEY_PREFIX + "*"), hasSize(10));
+
+        Arrays.sort(latencies);
+        System.out.printf("save into a full bucket: p50=%9.3fms p99=%9.3fms (%d runs)%n",
+                latencies[iterations / 2] / 1e6, latencies[(int) Math.ceil(iterations * 0.99) - 1] / 1e6, iterations);
+    }
+}
@@ -2,23 +2,33 @@ package com.losd.reqbot.repository;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.async.BucketWaiters;
 import com.losd.reqbot.config.RedisTemplateConfiguration;
 import com.losd.reqbot.config.RedisSettings;
 import com.losd.reqbot.config.RepoConfiguration;
+import com.losd.reqbot.metrics.RedisPoolMetrics;
+import com.losd.reqbot.metrics.ReqbotMetrics;
 import com.losd.reqbot.model.Request;
 import com.losd.reqbot.test.IntegrationTest;
 import org.apache.commons.lang.RandomStringUtils;
+import org.apache.commons.lang.StringUtils;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -54,11 +64,25 @@ public class RequestRedisRepoTest {
     @Autowired
     RequestRepo repo;
 
+    @Autowired
+    RequestRedisRepo redisRepo;
+
     @Autowired
     StringRedisTemplate template;
 
+    @Autowired
+    ReqbotMetrics metrics;
+
+    @Autowired
+    RedisPoolMetrics poolMetrics;
+
+    @Autowired
+    BucketWaiters waiters;
+
     private Gson gson = new GsonBuilder().serializeNulls().create();
 
+    private Gson rawGson = new GsonBuilder().disableHtmlEscaping().create();
+
     private String bucket;
 
     @Before
@@ -87,6 +111,22 @@ public class RequestRedisRepoTest {
         assertThat(getBucketLength(bucket), is(equalTo(1L)));
     }
 
+    @Test
+    public void it_times_each_round_trip_and_reports_the_pool() {
+        long saved = metrics.timer("reqbot.redis.request.save").getCount();
+
+        repo.save(buildRequest(bucket));
+        repo.getByBucket(bucket);
+
+        assertThat(metrics.timer("reqbot.redis.request.save").getCount(), is(saved + 1));
+        assertThat(metrics.timer("reqbot.redis.request.getByBucket").getCount(), is(greaterThanOrEqualTo(1L)));
+
+        Map<String, Number> pool = new HashMap<>();
+        poolMetrics.metrics().forEach(metric -> pool.put(metric.getName(), metric.getValue()));
+        assertThat(pool.get("reqbot.redis.pool.maxTotal").longValue(), is(greaterThan(0L)));
+        assertThat(pool.get("reqbot.redis.pool.idle").longValue(), is(greaterThan(0L)));
+    }
+
     private Long getBucketLength(String bucket) {
         return template.opsForList().size(RequestRedisRepo.getBucketKey(bucket));
     }
@@ -107,8 +147,56 @@ public class RequestRedisRepoTest {
             assertThat(savedRequest.getUuid(), is(equalTo(request.getUuid())));
         }
 
-        // expecting 4 keys, 3 for the request and 1 for the bucket
-        assertThat(template.keys("*").size(), is(equalTo(4)));
+        // expecting 5 keys, 3 for the request, 1 for the bucket and 1 for the bucket index
+        assertThat(template.keys("*").size(), is(equalTo(5)));
+    }
+
+    @Test
+    public void testSaveAllStopsBucketGettingTooBig() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(buildRequest(bucket));
+        }
+
+        repo.saveAll(requests);
+
+        assertThat(getBucketLength(bucket), is(equalTo(3L)));
+
+        List<String> keys = template.opsForList().range(RequestRedisRepo.getBucketKey(bucket), 0, -1);
+        assertThat(keys, contains(RequestRedisRepo.getRequestKey(requests.get(4)),
+                RequestRedisRepo.getRequestKey(requests.get(3)),
+                RequestRedisRepo.getRequestKey(requests.get(2))));
+
+        // expecting 5 keys, 3 for the request, 1 for the bucket and 1 for the bucket index
+        assertThat(template.keys("*").size(), is(equalTo(5)));
+    }
+
+    @Test
+    public void it_does_not_leave_evicted_requests_behind_with_concurrent_writers() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 200; i++) {
+            writers.submit(() -> repo.save(buildRequest(bucket)));
+        }
+
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS), is(true));
+
+        assertThat(getBucketLength(bucket), is(equalTo(3L)));
+        assertThat(template.keys(RequestRedisRepo.REQUEST_KEY_PREFIX + "*").size(), is(equalTo(3)));
+    }
+
+    @Test
+    public void it_saves_after_redis_has_forgotten_the_script() {
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.scriptFlush();
+            return null;
+        });
+
+        Request request = buildRequest(bucket);
+        repo.save(request);
+
+        assertThat(gson.fromJson(getRequest(request), Request.class).getUuid(), is(equalTo(request.getUuid())));
     }
 
     private String getRequest(Request request) {
@@ -143,18 +231,222 @@ public class RequestRedisRepoTest {
         assertThat(resultUuids, hasItems(testUuids.toArray(new UUID[testUuids.size()])));
     }
 
+    @Test
+    public void it_streams_a_bucket_a_chunk_at_a_time() {
+        redisRepo.multiGetChunkSize = 2;
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                repo.save(buildRequest(bucket));
+            }
+
+            List<List<String>> chunks = new ArrayList<>();
+            repo.streamRawByBucket(bucket, 0, 3, chunks::add);
+
+            assertThat(chunks, hasSize(2));
+            assertThat(chunks.get(0), hasSize(2));
+            assertThat(chunks.get(1), hasSize(1));
+        } finally {
+            redisRepo.multiGetChunkSize = 1000;
+        }
+    }
+
+    @Test
+    public void it_streams_a_bucket_a_page_at_a_time() {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(buildRequest(bucket));
+            repo.save(requests.get(i));
+        }
+
+        List<String> first = new ArrayList<>();
+        List<Long> cursors = new ArrayList<>();
+        repo.streamRawByBucket(bucket, 0, 2, new PageConsumer() {
+            @Override
+            public void accept(List<String> chunk) {
+                first.addAll(chunk);
+            }
+
+            @Override
+            public void nextCursor(long cursor) {
+                cursors.add(cursor);
+            }
+        });
+
+        assertThat(first, hasSize(2));
+        assertThat(gson.fromJson(first.get(0), Request.class).getUuid(), is(equalTo(requests.get(2).getUuid())));
+        assertThat(cursors, contains(2L));
+
+        List<String> second = new ArrayList<>();
+        repo.streamRawByBucket(bucket, 2, 2, new PageConsumer() {
+            @Override
+            public void accept(List<String> chunk) {
+                second.addAll(chunk);
+            }
+
+            @Override
+            public void nextCursor(long cursor) {
+                cursors.add(cursor);
+            }
+        });
+
+        assertThat(second, hasSize(1));
+        assertThat(gson.fromJson(second.get(0), Request.class).getUuid(), is(equalTo(requests.get(0).getUuid())));
+        assertThat(cursors, contains(2L));
+    }
+
+    @Test
+    public void it_can_get_a_page_of_buckets() {
+        repo.save(buildRequest("a"));
+        repo.save(buildRequest("b"));
+        repo.save(buildRequest("c"));
+
+        assertThat(repo.getBuckets(1, 5), contains("b", "c"));
+        assertThat(repo.getBuckets(0, 1), contains("a"));
+    }
+
+    @Test
+    public void it_gets_the_stored_json_for_a_bucket() {
+        Request request1 = new Request.Builder().bucket(bucket).method("GET").build();
+        Request request2 = new Request.Builder().bucket(bucket).method("POST").addHeader("Content-Type", "text/plain; charset=UTF-8").body("<body>").build();
+
+        repo.save(request1);
+        repo.save(request2);
+
+        List<String> result = new ArrayList<>();
+        repo.streamRawByBucket(bucket, 0, 3, result::addAll);
+
+        // newest first, without the null fields the api leaves out and without html escaping
+        assertThat(result, contains(rawGson.toJson(request2), rawGson.toJson(request1)));
+        assertThat(result.get(0), containsString("<body>"));
+        assertThat(result.get(0), containsString("charset=UTF-8"));
+    }
+
+    @Test
+    public void it_reads_requests_written_in_either_format() {
+        Request older = buildRequest(bucket);
+        redisRepo.save(older);
+
+        StorageCodec codec = redisRepo.codec;
+        redisRepo.codec = new StorageCodec(StorageCodec.Format.BINARY);
+
+        try {
+            Request newer = buildRequest(bucket);
+            redisRepo.save(newer);
+
+            assertThat(getRequest(newer).charAt(0), is('\0'));
+
+            List<UUID> uuids = new ArrayList<>();
+            redisRepo.getByBucket(bucket).forEach(request -> uuids.add(request.getUuid()));
+            assertThat(uuids, contains(newer.getUuid(), older.getUuid()));
+
+            List<String> result = new ArrayList<>();
+            redisRepo.streamRawByBucket(bucket, 0, 3, result::addAll);
+            assertThat(result, contains(rawGson.toJson(newer), rawGson.toJson(older)));
+        }
+        finally {
+            redisRepo.codec = codec;
+        }
+    }
+
+    @Test
+    public void it_compresses_large_bodies() {
+        Request request = new Request.Builder().bucket(bucket)
+                .method("POST")
+                .body(StringUtils.repeat("{\"a large\":\"body\"}", 4096))
+                .build();
+        redisRepo.save(request);
+
+        assertThat(getRequest(request).charAt(0), is('\0'));
+        assertThat(template.opsForValue().size(RequestRedisRepo.getRequestKey(request)), is(lessThan((long) request.getBody().length() / 10)));
+
+        List<String> result = new ArrayList<>();
+        redisRepo.streamRawByBucket(bucket, 0, 3, result::addAll);
+        assertThat(result, contains(rawGson.toJson(request)));
+    }
+
+    @Test
+    public void it_skips_requests_that_have_gone_from_a_bucket() {
+        Request request1 = buildRequest(bucket);
+        Request request2 = buildRequest(bucket);
+
+        putRequestInRedis(bucket, request1);
+        putRequestInRedis(bucket, request2);
+
+        // the key is still in the bucket list but the request itself has expired
+        template.delete(RequestRedisRepo.getRequestKey(request1));
+
+        List<Request> result = repo.getByBucket(bucket);
+
+        assertThat(result, hasSize(1));
+        assertThat(result.get(0).getUuid(), is(equalTo(request2.getUuid())));
+    }
+
+    @Test
+    public void it_gets_a_bucket_bigger_than_a_single_fetch() {
+        redisRepo.multiGetChunkSize = 2;
+
+        try {
+            Request request1 = buildRequest(bucket);
+            Request request2 = buildRequest(bucket);
+            Request request3 = buildRequest(bucket);
+
+            putRequestInRedis(bucket, request1);
+            putRequestInRedis(bucket, request2);
+            putRequestInRedis(bucket, request3);
+
+            List<UUID> resultUuids = new ArrayList<>();
+            redisRepo.getByBucket(bucket).forEach((res) -> resultUuids.add(res.getUuid()));
+
+            assertThat(resultUuids, contains(request3.getUuid(), request2.getUuid(), request1.getUuid()));
+        } finally {
+            redisRepo.multiGetChunkSize = 1000;
+        }
+    }
+
     @Test
     public void it_can_get_a_set_containing_all_of_the_buckets() {
+        repo.save(buildRequest("d"));
+        repo.save(buildRequest("b"));
+        repo.save(buildRequest("c"));
+        repo.save(buildRequest("a"));
+        repo.save(buildRequest("a"));
+
+        List<String> buckets = repo.getBuckets();
+        assertThat(buckets, contains("a", "b", "c", "d"));
+    }
+
+    @Test
+    public void it_indexes_buckets_written_before_the_index_existed() {
         template.opsForList().leftPush(RequestRedisRepo.getBucketKey("a"), "element");
         template.opsForList().leftPush(RequestRedisRepo.getBucketKey("b"), "element");
         template.opsForList().leftPush(RequestRedisRepo.getBucketKey("c"), "element");
         template.opsForList().leftPush(RequestRedisRepo.getBucketKey("d"), "element");
 
+        assertThat(repo.getBuckets(), Matchers.hasSize(0));
+
+        redisRepo.afterPropertiesSet();
+
         List<String> buckets = repo.getBuckets();
         assertThat(buckets, Matchers.hasSize(4));
         assertThat(buckets, hasItems("a", "b", "c", "d"));
     }
 
+    @Test
+    public void it_indexes_buckets_hidden_among_lots_of_other_keys() {
+        template.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < 20000; i++) {
+                connection.set((RequestRedisRepo.REQUEST_KEY_PREFIX + i).getBytes(), "{}".getBytes());
+            }
+            return null;
+        });
+        template.opsForList().leftPush(RequestRedisRepo.getBucketKey("a"), "element");
+
+        redisRepo.afterPropertiesSet();
+
+        assertThat(repo.getBuckets(), contains("a"));
+    }
+
     private void putRequestInRedis(String bucket,
                                    Request request) {
         // a bucket is a list to which the uuid of the request is added
@@ -164,6 +456,48 @@ public class RequestRedisRepoTest {
         template.opsForValue().set(RequestRedisRepo.getRequestKey(request), gson.toJson(request));
     }
 
+    @Test
+    public void it_hands_back_only_what_was_captured_after_the_last_request_seen() {
+        List<Request> saved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Request request = buildRequest(bucket);
+            saved.add(request);
+            repo.save(request);
+        }
+
+        assertThat(rawUuids(repo.getRawByBucketAfter(bucket, saved.get(0).getUuid().toString())),
+                contains(saved.get(2).getUuid().toString(), saved.get(1).getUuid().toString()));
+        assertThat(repo.getRawByBucketAfter(bucket, saved.get(2).getUuid().toString()), is(empty()));
+        assertThat(repo.getRawByBucketAfter(bucket, null), hasSize(3));
+
+        // the last one seen has aged out of the bucket, so everything in it is new
+        assertThat(repo.getRawByBucketAfter(bucket, UUID.randomUUID().toString()), hasSize(3));
+        assertThat(repo.getRawByBucketAfter("nothing-here", null), is(empty()));
+    }
+
+    private List<String> rawUuids(List<String> json) {
+        List<String> uuids = new ArrayList<>();
+        json.forEach(request -> uuids.add(new JsonParser().parse(request).getAsJsonObject().get("uuid").getAsString()));
+        return uuids;
+    }
+
+    @Test
+    public void it_wakes_whoever_is_waiting_on_a_bucket_it_saves_to() throws
+            Exception {
+        DeferredResult<String> result = waiters.await(bucket, 5000, "timed out",
+                () -> repo.getRawByBucketAfter(bucket, null).isEmpty() ? null : "captured");
+        assertThat(result.hasResult(), is(false));
+
+        repo.save(buildRequest(bucket));
+
+        long start = System.nanoTime();
+        while (!result.hasResult()) {
+            assertThat(System.nanoTime() - start, is(lessThan(TimeUnit.SECONDS.toNanos(5))));
+            Thread.sleep(5);
+        }
+        assertThat(result.getResult(), is("captured"));
+    }
+
     private Request buildRequest(String bucket) {
         Map<String, String> headers = new HashMap<>();
         headers.put(RandomStringUtils.randomAlphabetic(10), RandomStringUtils.randomAlphabetic(10));
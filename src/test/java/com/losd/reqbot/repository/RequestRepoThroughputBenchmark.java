@@ -0,0 +1,162 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.JournalSettings;
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.test.Benchmark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+@Category(Benchmark.class)
+public class RequestRepoThroughputBenchmark {
+    private static final int THREADS = 8;
+    private static final int BUCKETS = 16;
+    private static final long RUN_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JedisConnectionFactory factory;
+    private StringRedisTemplate template;
+    private RequestSettings settings;
+    private StorageCodec codec = new StorageCodec(StorageCodec.Format.JSON);
+
+    @Before
+    public void setup() {
+        String host = System.getenv("REQBOT_REDIS_HOST");
+        String port = System.getenv("REQBOT_REDIS_PORT");
+
+        factory = new JedisConnectionFactory();
+        factory.setHostName(host == null ? "localhost" : host);
+        factory.setPort(port == null ? 6379 : Integer.parseInt(port));
+        factory.getPoolConfig().setMaxTotal(THREADS * 2);
+        factory.afterPropertiesSet();
+
+        template = new StringRedisTemplate(factory);
+        template.afterPropertiesSet();
+        template.delete(template.keys("*"));
+
+        settings = new RequestSettings();
+        settings.setQueueSize(10);
+    }
+
+    @After
+    public void teardown() {
+        template.delete(template.keys("*"));
+        factory.destroy();
+    }
+
+    @Test
+    public void save_and_read_from_many_threads() throws Exception {
+        RequestRedisRepo redisRepo = new RequestRedisRepo();
+        redisRepo.settings = settings;
+        redisRepo.codec = codec;
+        redisRepo.template = template;
+
+        RequestMemoryRepo memoryRepo = new RequestMemoryRepo();
+        memoryRepo.settings = settings;
+
+        JournalSettings journalSettings = new JournalSettings();
+        journalSettings.setDirectory(folder.getRoot().getPath());
+
+        RequestJournalRepo journalRepo = new RequestJournalRepo();
+        journalRepo.settings = settings;
+        journalRepo.journalSettings = journalSettings;
+        journalRepo.codec = codec;
+        journalRepo.afterPropertiesSet();
+
+        report("redis", run(redisRepo));
+        report("memory", run(memoryRepo));
+        report("journal", run(journalRepo));
+
+        journalRepo.destroy();
+
+        assertThat(memoryRepo.getByBucket("bench0"), hasSize(10));
+    }
+
+    // every fourth operation reads a bucket back, the rest are saves
+    private double run(RequestRepo repo) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        LongAdder operations = new LongAdder();
+        List<Future<?>> running = new ArrayList<>();
+
+        long warmupEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS / 5);
+        long end = warmupEnd + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            running.add(workers.submit(() -> {
+                long i = 0;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    String bucket = "bench" + ((thread + i) % BUCKETS);
+
+                    if (i % 4 == 3) {
+                        repo.getByBucket(bucket);
+                    } else {
+                        repo.save(new Request.Builder()
+                                .bucket(bucket)
+                                .method("POST")
+                                .path("/" + bucket + "/some/path")
+                                .addHeader("Content-Type", "application/json")
+                                .body("{\"id\":" + i + ",\"name\":\"a request body of a typical size\"}")
+                                .build());
+                    }
+
+                    if (now > warmupEnd) {
+                        operations.increment();
+                    }
+                    i++;
+                }
+            }));
+        }
+
+        for (Future<?> future : running) {
+            future.get();
+        }
+        workers.shutdown();
+
+        return operations.sum() * 1000.0 / RUN_MILLIS;
+    }
+
+    private static void report(String name, double opsPerSecond) {
+        System.out.printf("%-8s %d threads, 3 saves to 1 read: %,12.0f ops/s%n", name, THREADS, opsPerSecond);
+    }
+}
@@ -0,0 +1,133 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.JournalSettings;
+import com.losd.reqbot.model.Response;
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ResponseJournalRepoTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JournalSettings journalSettings;
+    private ResponseJournalRepo repo;
+
+    @Before
+    public void setup() throws IOException {
+        journalSettings = new JournalSettings();
+        journalSettings.setDirectory(folder.getRoot().getPath());
+        journalSettings.setCompactIntervalMillis(0);
+
+        repo = open();
+    }
+
+    @After
+    public void teardown() {
+        repo.destroy();
+    }
+
+    @Test
+    public void it_saves_and_gets() {
+        Response response = new Response.Builder()
+                .addHeader("test-header", "test-header-text")
+                .tags(Arrays.asList("tag1", "tag2"))
+                .body("testresponsebody")
+                .build();
+
+        repo.save(response);
+
+        Response result = repo.get(response.getUuid().toString());
+
+        assertThat(result.getBody(), is(equalTo("testresponsebody")));
+        assertThat(result.getHeaders(), hasEntry("test-header", "test-header-text"));
+        assertThat(result.getTags(), contains("tag1", "tag2"));
+    }
+
+    @Test
+    public void it_handles_not_finding_anything() {
+        assertThat(repo.get("rubbish"), is(nullValue()));
+        assertThat(repo.getByTag("rubbish"), hasSize(0));
+        assertThat(repo.getTags(), hasSize(0));
+    }
+
+    @Test
+    public void it_rebuilds_the_tags_after_a_restart() throws IOException {
+        List<UUID> tag1 = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Response response = new Response.Builder().tags(Arrays.asList("tag" + i % 2)).body("body" + i).build();
+            repo.save(response);
+
+            if (i % 2 == 1) {
+                tag1.add(0, response.getUuid());
+            }
+        }
+        repo.save(new Response.Builder().body("untagged").build());
+
+        repo.destroy();
+        repo = open();
+
+        List<UUID> result = new ArrayList<>();
+        repo.getByTag("tag1").forEach(response -> result.add(response.getUuid()));
+
+        assertThat(result, is(equalTo(tag1)));
+        assertThat(repo.getTags(), contains("none", "tag0", "tag1"));
+        assertThat(repo.getAll(), hasSize(11));
+    }
+
+    @Test
+    public void it_tags_a_saved_response_without_reading_it_back() {
+        // reading back a compressed body would inflate it
+        repo.codec = new StorageCodec(StorageCodec.Format.BINARY, 16);
+
+        repo.save(new Response.Builder().tags(Arrays.asList("tag1")).body(StringUtils.repeat("body ", 100)).build());
+
+        assertThat(repo.getTags(), contains("tag1"));
+        assertThat(repo.codec.compressed(), is(1L));
+        assertThat(repo.codec.decompressed(), is(0L));
+    }
+
+    private ResponseJournalRepo open() throws IOException {
+        ResponseJournalRepo journalRepo = new ResponseJournalRepo();
+        journalRepo.journalSettings = journalSettings;
+        journalRepo.codec = new StorageCodec(StorageCodec.Format.BINARY);
+        journalRepo.afterPropertiesSet();
+
+        return journalRepo;
+    }
+}
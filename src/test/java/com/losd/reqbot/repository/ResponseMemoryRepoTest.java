@@ -0,0 +1,155 @@
+package com.losd.reqbot.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.losd.reqbot.model.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class ResponseMemoryRepoTest {
+    ResponseMemoryRepo repo;
+
+    private Gson gson = new GsonBuilder().serializeNulls().create();
+
+    @Before
+    public void setup() {
+        repo = new ResponseMemoryRepo();
+    }
+
+    @Test
+    public void it_saves_and_gets() throws Exception {
+        Response response = new Response.Builder()
+                .addHeader("test-header", "test-header-text")
+                .tags(Arrays.asList("tag1", "tag2"))
+                .body("testresponsebody")
+                .build();
+
+        repo.save(response);
+
+        Response result = repo.get(response.getUuid().toString());
+
+        assertThat(result.getBody(), is(equalTo("testresponsebody")));
+        assertThat(result.getHeaders(), hasEntry("test-header", "test-header-text"));
+        assertThat(result.getTags(), contains("tag1", "tag2"));
+        assertThat(repo.getByTag("tag1"), hasSize(1));
+        assertThat(repo.getByTag("tag2"), hasSize(1));
+    }
+
+    @Test
+    public void it_handles_not_finding_anything() throws Exception {
+        assertThat(repo.get("rubbish"), is(nullValue()));
+        assertThat(repo.getByTag("rubbish"), hasSize(0));
+    }
+
+    @Test
+    public void it_saves_with_no_tags() throws Exception {
+        Response response = new Response.Builder().body("testresponsebody").build();
+
+        repo.save(response);
+
+        assertThat(repo.getByTag("none"), hasSize(1));
+        assertThat(repo.getTags(), contains("none"));
+    }
+
+    @Test
+    public void it_gets_all() throws Exception {
+        Set<String> bodies = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            repo.save(new Response.Builder().addHeader("header" + i, "value" + i).body("body" + i).build());
+            bodies.add("body" + i);
+        }
+
+        Set<String> bodiesSeen = new HashSet<>();
+        repo.getAll().forEach(response -> bodiesSeen.add(response.getBody()));
+
+        assertThat(bodiesSeen, is(equalTo(bodies)));
+    }
+
+    @Test
+    public void it_gets_all_by_tag_newest_first() throws Exception {
+        List<UUID> tag1 = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            Response response = new Response.Builder().tags(Arrays.asList("tag" + i % 2)).body("body" + i).build();
+            repo.save(response);
+
+            if (i % 2 == 1) {
+                tag1.add(0, response.getUuid());
+            }
+        }
+
+        List<UUID> result = new ArrayList<>();
+        repo.getByTag("tag1").forEach(response -> result.add(response.getUuid()));
+
+        assertThat(result, is(equalTo(tag1)));
+    }
+
+    @Test
+    public void it_streams_a_page_of_a_tag() throws Exception {
+        List<Response> responses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add(new Response.Builder().tags(Arrays.asList("tag1")).body("body" + i).build());
+            repo.save(responses.get(i));
+        }
+
+        List<String> page = new ArrayList<>();
+        List<Long> cursors = new ArrayList<>();
+        repo.streamRawByTag("tag1", 1, 1, new PageConsumer() {
+            @Override
+            public void accept(List<String> chunk) {
+                page.addAll(chunk);
+            }
+
+            @Override
+            public void nextCursor(long cursor) {
+                cursors.add(cursor);
+            }
+        });
+
+        assertThat(page, contains(gson.toJson(responses.get(1), Response.class)));
+        assertThat(cursors, contains(2L));
+    }
+
+    @Test
+    public void it_gets_a_list_of_tags() throws Exception {
+        repo.save(new Response.Builder().tags(Arrays.asList("tag4", "tag2")).body("a").build());
+        repo.save(new Response.Builder().tags(Arrays.asList("tag3")).body("b").build());
+        repo.save(new Response.Builder().tags(Arrays.asList("tag1", "tag2")).body("c").build());
+
+        assertThat(repo.getTags(), contains("tag1", "tag2", "tag3", "tag4"));
+        assertThat(repo.getTags(1, 2), contains("tag2", "tag3"));
+    }
+
+    @Test
+    public void it_handles_there_being_no_tags() throws Exception {
+        assertThat(repo.getTags(), hasSize(0));
+    }
+}
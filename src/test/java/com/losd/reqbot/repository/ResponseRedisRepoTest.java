@@ -53,6 +53,9 @@ public class ResponseRedisRepoTest {
     @Autowired
     ResponseRepo repo;
 
+    @Autowired
+    ResponseRedisRepo redisRepo;
+
     @Autowired
     StringRedisTemplate template;
 
@@ -146,7 +149,7 @@ public class ResponseRedisRepoTest {
                     .body("body" + i)
                     .build();
 
-            template.opsForValue().set(ResponseRedisRepo.RESPONSE_KEY_PREFIX + response.getUuid(), gson.toJson(response, Response.class));
+            repo.save(response);
         }
 
         List<Response> result = repo.getAll();
@@ -189,17 +192,104 @@ public class ResponseRedisRepoTest {
         assertThat(tag1Uuids, containsInAnyOrder(uuids[1][0], uuids[1][1], uuids[1][2], uuids[1][3], uuids[1][4]));
     }
 
+    @Test
+    public void it_gets_the_stored_json_for_a_tag() throws Exception {
+        Response response = new Response.Builder().tags(Arrays.asList("tag1")).body("body").build();
+        repo.save(response);
+        repo.save(new Response.Builder().tags(Arrays.asList("tag2")).body("body").build());
+
+        List<String> result = new ArrayList<>();
+        repo.streamRawByTag("tag1", 0, Integer.MAX_VALUE, result::addAll);
+
+        assertThat(result, contains(gson.toJson(response, Response.class)));
+    }
+
+    @Test
+    public void it_reads_responses_written_in_either_format() throws Exception {
+        Response older = new Response.Builder().tags(Arrays.asList("tag1")).body("older").build();
+        redisRepo.save(older);
+
+        StorageCodec codec = redisRepo.codec;
+        redisRepo.codec = new StorageCodec(StorageCodec.Format.BINARY);
+
+        try {
+            Response newer = new Response.Builder().tags(Arrays.asList("tag1")).addHeader("a", "b").body("newer").build();
+            redisRepo.save(newer);
+
+            assertThat(redisRepo.get(newer.getUuid().toString()).getBody(), is(equalTo("newer")));
+            assertThat(redisRepo.get(older.getUuid().toString()).getBody(), is(equalTo("older")));
+            assertThat(redisRepo.getAll(), hasSize(2));
+
+            List<String> result = new ArrayList<>();
+            redisRepo.streamRawByTag("tag1", 0, Integer.MAX_VALUE, result::addAll);
+            assertThat(result, contains(gson.toJson(newer, Response.class), gson.toJson(older, Response.class)));
+        }
+        finally {
+            redisRepo.codec = codec;
+        }
+    }
+
     @Test
     public void it_gets_a_list_of_buckets() throws Exception {
-        template.opsForList().leftPush(ResponseRedisRepo.TAG_PREFIX + "tag1", "a");
-        template.opsForList().leftPush(ResponseRedisRepo.TAG_PREFIX + "tag2", "b");
-        template.opsForList().leftPush(ResponseRedisRepo.TAG_PREFIX + "tag3", "c");
-        template.opsForList().leftPush(ResponseRedisRepo.TAG_PREFIX + "tag4", "d");
+        repo.save(new Response.Builder().tags(Arrays.asList("tag4", "tag2")).body("a").build());
+        repo.save(new Response.Builder().tags(Arrays.asList("tag3")).body("b").build());
+        repo.save(new Response.Builder().tags(Arrays.asList("tag1", "tag2")).body("c").build());
 
         List<String> tags = repo.getTags();
 
-        assertThat(tags, hasSize(4));
-        assertThat(tags, containsInAnyOrder("tag1", "tag2", "tag3", "tag4"));
+        assertThat(tags, contains("tag1", "tag2", "tag3", "tag4"));
+    }
+
+    @Test
+    public void it_indexes_responses_written_before_the_index_existed() throws Exception {
+        Response response = new Response.Builder().body("body").build();
+
+        template.opsForValue().set(ResponseRedisRepo.RESPONSE_KEY_PREFIX + response.getUuid(), gson.toJson(response, Response.class));
+        template.opsForList().leftPush(ResponseRedisRepo.TAG_PREFIX + "tag1", ResponseRedisRepo.RESPONSE_KEY_PREFIX + response.getUuid());
+
+        assertThat(repo.getAll(), hasSize(0));
+        assertThat(repo.getTags(), hasSize(0));
+
+        redisRepo.afterPropertiesSet();
+
+        List<Response> all = repo.getAll();
+        assertThat(all, hasSize(1));
+        assertThat(all.get(0).getUuid(), is(equalTo(response.getUuid())));
+        assertThat(repo.getTags(), contains("tag1"));
+    }
+
+    @Test
+    public void it_can_get_a_page_of_tags() throws Exception {
+        repo.save(new Response.Builder().tags(Arrays.asList("tag1", "tag2", "tag3")).body("a").build());
+
+        assertThat(repo.getTags(1, 1), contains("tag2"));
+        assertThat(repo.getTags(2, 5), contains("tag3"));
+    }
+
+    @Test
+    public void it_streams_a_page_of_a_tag() throws Exception {
+        List<Response> responses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add(new Response.Builder().tags(Arrays.asList("tag1")).body("body" + i).build());
+            repo.save(responses.get(i));
+        }
+
+        List<String> page = new ArrayList<>();
+        List<Long> cursors = new ArrayList<>();
+        repo.streamRawByTag("tag1", 1, 1, new PageConsumer() {
+            @Override
+            public void accept(List<String> chunk) {
+                page.addAll(chunk);
+            }
+
+            @Override
+            public void nextCursor(long cursor) {
+                cursors.add(cursor);
+            }
+        });
+
+        assertThat(page, contains(gson.toJson(responses.get(1), Response.class)));
+        assertThat(cursors, contains(2L));
     }
 
     @Test
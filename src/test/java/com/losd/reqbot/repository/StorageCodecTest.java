@@ -0,0 +1,166 @@
+package com.losd.reqbot.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.losd.reqbot.model.Request;
+import com.losd.reqbot.model.Response;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class StorageCodecTest {
+    private StorageCodec json = new StorageCodec(StorageCodec.Format.JSON);
+    private StorageCodec binary = new StorageCodec(StorageCodec.Format.BINARY);
+
+    private Gson requestGson = new GsonBuilder().disableHtmlEscaping().create();
+    private Gson responseGson = new GsonBuilder().serializeNulls().disableHtmlEscaping().create();
+
+    private Request request = new Request.Builder()
+            .bucket("bücket")
+            .method("POST")
+            .path("/bücket/some/path")
+            .addHeader("Content-Type", "application/json")
+            .addQueryParameters("a", "1=2")
+            .body("{\"id\":1,\"name\":\"<a request body>\"}")
+            .build();
+
+    private Response response = new Response.Builder()
+            .addHeader("Content-Type", "text/plain")
+            .tags(Arrays.asList("tag1", "tag2"))
+            .body("a response body")
+            .build();
+
+    @Test
+    public void it_writes_json_the_same_as_the_api_renders_it() {
+        assertThat(new String(json.encode(request), StandardCharsets.UTF_8), is(equalTo(requestGson.toJson(request))));
+        assertThat(new String(json.encode(response), StandardCharsets.UTF_8), is(equalTo(responseGson.toJson(response, Response.class))));
+    }
+
+    @Test
+    public void it_reads_back_a_binary_request() {
+        byte[] stored = binary.encode(request);
+
+        assertThat(stored[0], is(StorageCodec.BINARY_MARKER));
+        assertThat(stored[1], is(StorageCodec.BINARY_VERSION));
+        assertThat(stored.length, is(lessThan(json.encode(request).length)));
+
+        assertThat(requestGson.toJson(binary.decodeRequest(stored)), is(equalTo(requestGson.toJson(request))));
+        assertThat(binary.requestJson(stored), is(equalTo(requestGson.toJson(request))));
+    }
+
+    @Test
+    public void it_reads_back_a_binary_response() {
+        byte[] stored = binary.encode(response);
+
+        assertThat(stored.length, is(lessThan(json.encode(response).length)));
+        assertThat(binary.responseJson(stored), is(equalTo(responseGson.toJson(response, Response.class))));
+        assertThat(binary.decodeResponse(stored).getTags(), contains("tag1", "tag2"));
+    }
+
+    @Test
+    public void it_keeps_missing_fields_missing() {
+        Request empty = new Request.Builder().bucket("a").method("GET").build();
+        Response noBody = new Response.Builder().build();
+
+        assertThat(binary.requestJson(binary.encode(empty)), is(equalTo(requestGson.toJson(empty))));
+        assertThat(binary.decodeRequest(binary.encode(empty)).getBody(), is(nullValue()));
+        assertThat(binary.responseJson(binary.encode(noBody)), is(equalTo(responseGson.toJson(noBody, Response.class))));
+    }
+
+    @Test
+    public void it_reads_whichever_format_an_entry_was_written_in() {
+        assertThat(binary.decodeRequest(json.encode(request)).getUuid(), is(equalTo(request.getUuid())));
+        assertThat(json.decodeRequest(binary.encode(request)).getUuid(), is(equalTo(request.getUuid())));
+        assertThat(binary.responseJson(json.encode(response)), is(equalTo(responseGson.toJson(response, Response.class))));
+        assertThat(json.responseJson(binary.encode(response)), is(equalTo(responseGson.toJson(response, Response.class))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void it_refuses_a_version_it_does_not_know() {
+        byte[] stored = binary.encode(request);
+        stored[1] = 99;
+
+        binary.decodeRequest(stored);
+    }
+
+    @Test
+    public void it_compresses_bodies_over_the_threshold_in_either_format() {
+        StorageCodec compressing = new StorageCodec(StorageCodec.Format.JSON, 1024);
+        Request large = new Request.Builder().bucket("a").method("POST").body(StringUtils.repeat("a large body ", 1000)).build();
+
+        byte[] stored = compressing.encode(large);
+
+        assertThat(stored[0], is(StorageCodec.BINARY_MARKER));
+        assertThat(stored.length, is(lessThan(large.getBody().length() / 10)));
+        assertThat(compressing.decodeRequest(stored).getBody(), is(equalTo(large.getBody())));
+        assertThat(json.requestJson(stored), is(equalTo(requestGson.toJson(large))));
+        assertThat(compressing.compressed(), is(1L));
+        assertThat(compressing.decompressed(), is(1L));
+    }
+
+    @Test
+    public void it_leaves_small_bodies_alone() {
+        StorageCodec compressing = new StorageCodec(StorageCodec.Format.JSON, 1024);
+        StorageCodec compressingBinary = new StorageCodec(StorageCodec.Format.BINARY, 1024);
+
+        assertThat(new String(compressing.encode(response), StandardCharsets.UTF_8), is(equalTo(responseGson.toJson(response, Response.class))));
+        assertThat(compressingBinary.encode(response), is(equalTo(binary.encode(response))));
+        assertThat(compressing.compressed() + compressingBinary.compressed(), is(0L));
+    }
+
+    @Test
+    public void it_keeps_how_a_request_body_was_captured() {
+        Request captured = new Request.Builder().bucket("a").method("POST")
+                .bodyEncoding("base64")
+                .body("iVBORw0KGgo=")
+                .truncated(1048577L, "0123456789abcdef")
+                .build();
+
+        Request read = binary.decodeRequest(binary.encode(captured));
+
+        assertThat(read.getBodyEncoding(), is("base64"));
+        assertThat(read.getBodyLength(), is(1048577L));
+        assertThat(read.getBodySha256(), is("0123456789abcdef"));
+        assertThat(binary.requestJson(binary.encode(captured)), is(equalTo(requestGson.toJson(captured))));
+        assertThat(binary.decodeRequest(binary.encode(request)).getBodyLength(), is(nullValue()));
+    }
+
+    @Test
+    public void it_writes_the_timestamp_as_an_iso_string_in_json() {
+        JsonObject stored = new JsonParser().parse(new String(json.encode(request), StandardCharsets.UTF_8)).getAsJsonObject();
+
+        assertThat(stored.get("timestamp").getAsString(), is(equalTo(Instant.ofEpochMilli(request.getTimestampMillis()).toString())));
+        assertThat(json.decodeRequest(json.encode(request)).getTimestampMillis(), is(request.getTimestampMillis()));
+    }
+}
@@ -0,0 +1,152 @@
+package com.losd.reqbot.repository;
+
+import com.losd.reqbot.config.RequestSettings;
+import com.losd.reqbot.model.Request;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * The MIT License (MIT)
+ * <p>
+ * Copyright (c) 2015 Andrew Braithwaite
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * <p>
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * <p>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+public class WriteBehindRequestRepoTest {
+    @Mock
+    RequestRepo delegate;
+
+    @Mock
+    GaugeService gaugeService;
+
+    @Mock
+    CounterService counterService;
+
+    RequestSettings settings;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        settings = new RequestSettings();
+        settings.setWriteBehindCapacity(100);
+        settings.setBatchSize(3);
+        settings.setLingerMillis(50);
+    }
+
+    @Test
+    public void it_writes_everything_in_batches_before_shutting_down() throws Exception {
+        WriteBehindRequestRepo repo = build();
+        repo.afterPropertiesSet();
+
+        List<UUID> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Request request = new Request.Builder().bucket("a").method("GET").build();
+            saved.add(request.getUuid());
+            repo.save(request);
+        }
+
+        repo.destroy();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Request>> batches = ArgumentCaptor.forClass((Class) List.class);
+        verify(delegate, atLeastOnce()).saveAll(batches.capture());
+        verify(delegate, never()).save(any(Request.class));
+
+        List<UUID> written = new ArrayList<>();
+        batches.getAllValues().forEach(batch -> {
+            assertThat(batch.size(), is(lessThanOrEqualTo(3)));
+            batch.forEach(request -> written.add(request.getUuid()));
+        });
+
+        assertThat(written, is(equalTo(saved)));
+        assertThat(repo.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void it_saves_synchronously_when_the_queue_is_full() throws Exception {
+        settings.setWriteBehindCapacity(1);
+        WriteBehindRequestRepo repo = build();
+        repo.afterPropertiesSet();
+
+        // block the flusher so the queue stays full
+        doAnswer(invocation -> {
+            Thread.sleep(500);
+            return null;
+        }).when(delegate).saveAll(anyListOf(Request.class));
+
+        for (int i = 0; i < 5; i++) {
+            repo.save(new Request.Builder().bucket("a").method("GET").build());
+        }
+
+        verify(delegate, atLeastOnce()).save(any(Request.class));
+        verify(counterService, atLeastOnce()).increment(WriteBehindRequestRepo.OVERFLOW_METRIC);
+
+        repo.destroy();
+    }
+
+    @Test
+    public void it_saves_synchronously_once_it_has_been_shut_down() throws Exception {
+        WriteBehindRequestRepo repo = build();
+        repo.afterPropertiesSet();
+        repo.destroy();
+
+        Request request = new Request.Builder().bucket("a").method("GET").build();
+        repo.save(request);
+
+        verify(delegate, times(1)).save(request);
+    }
+
+    @Test
+    public void it_reads_from_the_underlying_repo() throws Exception {
+        WriteBehindRequestRepo repo = build();
+
+        repo.getByBucket("a");
+        repo.streamRawByBucket("a", 0, 10, chunk -> {
+        });
+        repo.getBuckets();
+        repo.getBuckets(0, 10);
+
+        verify(delegate, times(1)).getByBucket("a");
+        verify(delegate, times(1)).streamRawByBucket(eq("a"), eq(0L), eq(10), any());
+        verify(delegate, times(1)).getBuckets(0, 10);
+        verify(delegate, times(1)).getBuckets();
+    }
+
+    private WriteBehindRequestRepo build() {
+        WriteBehindRequestRepo repo = new WriteBehindRequestRepo(delegate, settings);
+        repo.gaugeService = gaugeService;
+        repo.counterService = counterService;
+        return repo;
+    }
+}